@@ -30,6 +30,7 @@ import org.luwrain.core.*;
 import org.luwrain.app.base.*;
 import org.luwrain.graphical.*;
 import org.luwrain.web.*;
+import org.luwrain.settings.browser.Settings;
 
 import static org.luwrain.graphical.FxThread.*;
 
@@ -39,9 +40,14 @@ static final String
     LOG_COMPONENT = "browser";
 
     static private final boolean LOAD_INITIAL = true;
+    static private final int VIEWPORT_MARGIN = 2;
 
     private final String arg;
     private Conv conv = null;
+    private TagTable tagTable = null;
+    private LineBreaker lineBreaker = null;
+    private UpdateScheduler updateScheduler = null;
+    private final PageProcessor pageProcessor = new PageProcessor();
     private MainLayout mainLayout = null;
 
         private     WebEngine webEngine = null;
@@ -58,6 +64,9 @@ static final String
     @Override protected AreaLayout onAppInit()
     {
 	this.conv = new Conv(this);
+	this.tagTable = createTagTable();
+	this.lineBreaker = Settings.create(getLuwrain().getRegistry()).getUnicodeLineBreaking(false)?
+	LineBreaker.forLocale(Locale.getDefault()):LineBreaker.WHITESPACE;
 		runSync(()->{
 						this.webView = new WebView();
 			this.webEngine = webView.getEngine();
@@ -95,6 +104,9 @@ static final String
 
     @Override public boolean onEscape()
     {
+	if (updateScheduler != null)
+	    updateScheduler.close();
+	pageProcessor.close();
 	closeApp();
 	return true;
     }
@@ -113,15 +125,24 @@ static final String
 		firstSwitching = null;
 	    }
 	    final var title = webEngine.getTitle();
-	    final var blocks = new WebKitBlocks(webEngine).process(100);
-	    getLuwrain().runUiSafely(()->{
-		    final var b = new ArrayList<WebBlock>();
-		    b.ensureCapacity(blocks.size());
-		    blocks.forEach(i->{ if (i.visible) b.add(new WebBlock(i)); });
-		    mainLayout.webArea.setBlocks(b.toArray(new WebBlock[b.size()]));
-		    setAppName(title);
-		    getLuwrain().playSound(Sounds.OK);
+	    final var webKitBlocks = new WebKitBlocks(webEngine, tagTable, lineBreaker);
+	    final var receiver = new BlocksReceiver(mainLayout.webArea);
+	    final var job = pageProcessor.process(webKitBlocks, 100, VIEWPORT_MARGIN, (j, batch, first, last)->{
+		    getLuwrain().runUiSafely(()->{
+			    //The batches of the previous pages are dropped, even if they are already in the queue
+			    if (j.isCancelled())
+				return;
+			    receiver.onBatch(toWebBlocks(batch), first, last);
+			    if (last)
+				getLuwrain().playSound(Sounds.OK);
+			});
 		});
+	    webKitBlocks.setUpdateScheduler(createUpdateScheduler(webKitBlocks, job));
+	    getLuwrain().runUiSafely(()->setAppName(title));
+	    break;
+	case SCHEDULED:
+	    //The new navigation, the processing of the previous page is useless
+	    pageProcessor.cancel();
 	    break;
 	    	case FAILED:
 	    getLuwrain().runUiSafely(()->getLuwrain().playSound(Sounds.ERROR));
@@ -129,6 +150,81 @@ static final String
 	}
     }
 
+    /**
+     * Creates the scheduler of the updates of the new page, the scheduler
+     * of the previous page is stopped.
+     */
+    private UpdateScheduler createUpdateScheduler(WebKitBlocks webKitBlocks, PageProcessor.Job job)
+    {
+	if (updateScheduler != null)
+	    updateScheduler.close();
+	final var settings = Settings.create(getLuwrain().getRegistry());
+	final int quietPeriod = settings.getUpdateQuietPeriod((int)UpdateScheduler.DEFAULT_QUIET_PERIOD);
+	final int maxStaleness = settings.getUpdateMaxStaleness((int)UpdateScheduler.DEFAULT_MAX_STALENESS);
+	try {
+	    updateScheduler = new UpdateScheduler(quietPeriod, maxStaleness, count->onPageUpdate(webKitBlocks, job, count));
+	}
+	catch(IllegalArgumentException e)
+	{
+	    Log.error(LOG_COMPONENT, "unable to use the update periods from the settings: " + e.getMessage());
+	    updateScheduler = new UpdateScheduler(UpdateScheduler.DEFAULT_QUIET_PERIOD, UpdateScheduler.DEFAULT_MAX_STALENESS, count->onPageUpdate(webKitBlocks, job, count));
+	}
+	return updateScheduler;
+    }
+
+    private void onPageUpdate(WebKitBlocks webKitBlocks, PageProcessor.Job job, int mutationCount)
+    {
+	final List<WebKitBlock> blocks;
+	try {
+	    blocks = webKitBlocks.update(100, null, job::isCancelled);
+	}
+	catch(java.util.concurrent.CancellationException e)
+	{
+	    Log.debug(LOG_COMPONENT, "the update of the previous page is cancelled");
+	    return;
+	}
+	if (blocks == null)
+	    return;
+	Log.debug(LOG_COMPONENT, "page updated after " + mutationCount + " mutations");
+	getLuwrain().runUiSafely(()->{
+		if (!job.isCancelled())
+		    mainLayout.webArea.updateBlocks(toWebBlocks(blocks));
+	    });
+    }
+
+    /**
+     * Opens the new page, the processing of the current one is stopped
+     * before the loading starts.
+     */
+    void openUrl(String url)
+    {
+	runSync(()->{
+		pageProcessor.cancel();
+		webEngine.load(url);
+	    });
+    }
+
+    private TagTable createTagTable()
+    {
+	final String overrides = Settings.create(getLuwrain().getRegistry()).getTagClasses("");
+	try {
+	    return TagTable.create(overrides);
+	}
+	catch(IllegalArgumentException e)
+	{
+	    Log.error(LOG_COMPONENT, "unable to use the tag classes from the settings: " + e.getMessage());
+	    return TagTable.getDefault();
+	}
+    }
+
+    static private WebBlock[] toWebBlocks(List<WebKitBlock> blocks)
+    {
+	final var b = new ArrayList<WebBlock>();
+	b.ensureCapacity(blocks.size());
+	blocks.forEach(i->{ if (i.visible) b.add(new WebBlock(i)); });
+	return b.toArray(new WebBlock[b.size()]);
+    }
+
     Conv getConv() { return this.conv; }
     public WebEngine getEngine() { return webEngine; }
     public WebView getView() { return webView; }
@@ -0,0 +1,71 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+
+package org.luwrain.app.browser;
+
+import java.util.*;
+
+import org.luwrain.controls.block.*;
+
+import static org.luwrain.core.NullCheck.*;
+
+/**
+ * Puts the batches of the processing of one page to the area. The first
+ * screens are shown at once, the blocks of the whole page replace them
+ * without moving the hot point. The batches of the whole page are held
+ * until they cover the blocks already shown, so the hot point isn't
+ * clamped to the first small batch, the rest is appended.
+ */
+final class BlocksReceiver
+{
+    private final BlockArea area;
+    private boolean shown = false;
+    private List<Block> replacement = null;
+
+    BlocksReceiver(BlockArea area)
+    {
+	notNull(area, "area");
+	this.area = area;
+    }
+
+    /**
+     * Takes the next batch. Must be called on the UI thread.
+     *
+     * @param batch The blocks of the batch
+     * @param first True if the batch begins the blocks, the blocks received before are to be replaced
+     * @param last True if there will be no more batches
+     */
+    void onBatch(Block[] batch, boolean first, boolean last)
+    {
+	notNull(batch, "batch");
+	if (replacement == null && !(first && shown))
+	{
+	    if (first)
+		area.setBlocks(batch); else
+		area.appendBlocks(batch);
+	    shown = true;
+	    return;
+	}
+	if (first)
+	    replacement = new ArrayList<>();
+	replacement.addAll(Arrays.asList(batch));
+	if (replacement.size() < area.getBlockCount() && !last)
+	    return;
+	area.updateBlocks(replacement.toArray(new Block[replacement.size()]));
+	replacement = null;
+    }
+}
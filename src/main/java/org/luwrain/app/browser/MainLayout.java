@@ -66,7 +66,7 @@ final class MainLayout extends LayoutBase
 	final String url = app.getConv().openUrl("https://");
 	if (url == null)
 	    return false;
-	FxThread.runSync(()->app.getEngine().load(url));
+	app.openUrl(url);
 	return true;
     }
 
@@ -105,17 +105,17 @@ final class MainLayout extends LayoutBase
 	@Override public void announceFirstBlockLine(Block block, BlockLine blockLine)
 	{
 	    	    final var webLine = (WebLine)blockLine;
-		    app.setEventResponse(text(webLine.text));
+		    app.setEventResponse(text(webLine.getText()));
 	}
 	@Override public void announceBlockLine(Block block, BlockLine blockLine)
 	{
 	    	    final var webLine = (WebLine)blockLine;
-		    		    app.setEventResponse(text(webLine.text));
+		    		    app.setEventResponse(text(webLine.getText()));
 	}
 	@Override public String getBlockLineTextAppearance(Block block, BlockLine blockLine)
 	{
 	    final var webLine = (WebLine)blockLine;
-	    return webLine.text;
+	    return webLine.getText();
 	}
     }
 }
@@ -26,7 +26,7 @@ import static org.luwrain.core.NullCheck.*;
 
 final class WebLine implements BlockLine
 {
-    final String text;
+    private final String text;
     final Line srcLine;
 
     WebLine(String text)
@@ -39,7 +39,16 @@ final class WebLine implements BlockLine
     WebLine(Line srcLine)
     {
 	notNull(srcLine, "srcLine");
-	this.text = srcLine.text;
+	this.text = null;
 	this.srcLine = srcLine;
     }
+
+    /**
+     * Returns the text of the line. The lines of the web pages don't keep
+     * their strings, so the string is made on every call.
+     */
+    String getText()
+    {
+	return text != null?text:srcLine.getText();
+    }
 }
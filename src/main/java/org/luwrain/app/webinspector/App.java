@@ -43,6 +43,8 @@ public final class App extends AppBase <Strings>implements Application
     static final String
 	LOG_COMPONENT = "webins";
 
+    static private final int VIEWPORT_MARGIN = 2;
+
     static App instance = null;
 
     final List<String> messages = new ArrayList<>();
@@ -54,6 +56,9 @@ public final class App extends AppBase <Strings>implements Application
     private WebView webView = null;
     private Runnable firstSwitching = null;
     final List<WebKitBlock> blocks = new ArrayList<>();
+    private WebKitBlocks webKitBlocks = null;
+    private final PageProcessor pageProcessor = new PageProcessor();
+    private PageGeometry geometry = null;
         private WebTree tree = null;
 
     public App()
@@ -105,6 +110,7 @@ public final class App extends AppBase <Strings>implements Application
 
     @Override public boolean onEscape()
     {
+	pageProcessor.close();
 		closeApp();
 		return true;
     }
@@ -112,12 +118,10 @@ public final class App extends AppBase <Strings>implements Application
     void update()
     {
 	runSync(()->{
-		final var b = new org.luwrain.web.WebKitBlocks(webEngine);
-b.process(100);
-this.blocks.clear();
-this.blocks.addAll(b.blocks);
+		if (webKitBlocks == null)
+		    webKitBlocks = new org.luwrain.web.WebKitBlocks(webEngine);
+		startProcessing();
 	    });
-		mainLayout.blocksArea.refresh();
 	    }
 
     private void onStateChanged(ObservableValue<? extends State> ov, State oldState, State newState)
@@ -128,14 +132,8 @@ this.blocks.addAll(b.blocks);
 		switch(newState)
 		{
 		case SUCCEEDED: {
-final var b = new org.luwrain.web.WebKitBlocks(webEngine);
-b.process(100);
-this.blocks.clear();
-this.blocks.addAll(b.blocks);
-						getLuwrain().runUiSafely(()->{
-mainLayout.blocksArea.refresh();
-												getLuwrain().playSound(Sounds.MESSAGE);
-					});
+webKitBlocks = new org.luwrain.web.WebKitBlocks(webEngine);
+startProcessing();
 						print("The page is loaded");
 						if (firstSwitching != null)
 {
@@ -144,6 +142,9 @@ firstSwitching.run();
 }
 				break;
 		}
+		case SCHEDULED:
+		    pageProcessor.cancel();
+		    break;
 					case FAILED:
 				getLuwrain().runUiSafely(()->getLuwrain().playSound(Sounds.ERROR));
 
@@ -151,6 +152,41 @@ firstSwitching.run();
 		}
     }
 
+    /**
+     * Starts the processing of the page in the background, the blocks are
+     * shown when the whole page is laid out. Must be called on the FX thread.
+     */
+    private void startProcessing()
+    {
+	final var b = webKitBlocks;
+	final var res = new ArrayList<WebKitBlock>();
+	pageProcessor.process(b, 100, VIEWPORT_MARGIN, (job, batch, first, last)->{
+		//The batches of the whole page begin with the first one, the blocks of the viewport are dropped
+		if (first)
+		    res.clear();
+		res.addAll(batch);
+		if (!last)
+		    return;
+		getLuwrain().runUiSafely(()->{
+			if (job.isCancelled())
+			    return;
+			this.blocks.clear();
+			this.blocks.addAll(res);
+			updateGeometry();
+			mainLayout.blocksArea.refresh();
+			getLuwrain().playSound(Sounds.MESSAGE);
+		    });
+	    });
+    }
+
+    private void updateGeometry()
+    {
+	final var geom = webKitBlocks.getGeom();
+	this.geometry = geom != null?geom.getGeometry():null;
+	if (geometry != null)
+	    print("Page geometry: " + geometry.size() + " nodes");
+    }
+
     void print(String message)
     {
 		messages.add(0, message);
@@ -162,6 +198,7 @@ firstSwitching.run();
     WebView getWebView() { return webView; }
     WebEngine getEngine() { return webEngine; }
     WebTree getTree() { return tree; }
+    PageGeometry getGeometry() { return geometry; }
 
     static public void log(String msg)
     {
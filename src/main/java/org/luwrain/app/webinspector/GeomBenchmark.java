@@ -0,0 +1,78 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.app.webinspector;
+
+import java.util.*;
+
+import javafx.scene.web.WebEngine;
+
+import org.luwrain.web.*;
+
+import static org.luwrain.core.NullCheck.*;
+import static org.luwrain.graphical.FxThread.*;
+
+/**
+ * Compares the time of taking the geometry of the current page in the
+ * packed mode and by reading the members of every node separately.
+ */
+final class GeomBenchmark
+{
+    static final int
+	WARMUP_ROUNDS = 2,
+	ROUNDS = 5;
+
+    private final WebEngine engine;
+    private final List<String> res = new ArrayList<>();
+
+    GeomBenchmark(WebEngine engine)
+    {
+	notNull(engine, "engine");
+	this.engine = engine;
+    }
+
+    List<String> run()
+    {
+	res.clear();
+	runSync(()->{
+		final long packed = measure(WebKitGeom.Mode.PACKED);
+		final long perMember = measure(WebKitGeom.Mode.PER_MEMBER);
+		res.add("Packed: " + packed + " ms");
+		res.add("Per member: " + perMember + " ms");
+		if (packed > 0)
+		    res.add("Speedup: " + String.format("%.2f", Float.valueOf(perMember) / packed));
+	    });
+	return res;
+    }
+
+    private long measure(WebKitGeom.Mode mode)
+    {
+	int count = 0;
+	for(int i = 0;i < WARMUP_ROUNDS;i++)
+	    count = new WebKitGeom(engine, mode).scan();
+	long domTime = 0;
+	final long startTime = System.currentTimeMillis();
+	for(int i = 0;i < ROUNDS;i++)
+	{
+	    final var geom = new WebKitGeom(engine, mode);
+	    geom.scan();
+	    domTime += geom.getDomLastTime();
+	}
+	final long time = (System.currentTimeMillis() - startTime) / ROUNDS;
+	res.add(mode.toString() + ": " + count + " nodes, DOM scanning " + (domTime / ROUNDS) + " ms");
+	return time;
+    }
+}
@@ -98,6 +98,12 @@ final class MainLayout extends LayoutBase implements ConsoleArea.InputHandler
 	    return ConsoleArea.InputHandler.Result.REJECTED;
 	if (text.trim().equals("test"))
 	    return onTest()?ConsoleArea.InputHandler.Result.CLEAR_INPUT:ConsoleArea.InputHandler.Result.REJECTED;;
+	if (text.trim().equals("bench-geom"))
+	{
+	    for(var l: new GeomBenchmark(app.getEngine()).run())
+		app.print(l);
+	    return ConsoleArea.InputHandler.Result.CLEAR_INPUT;
+	}
 		FxThread.runSync(()->app.getEngine().load(text));
 		/*
 		app.getLuwrain().showGraphical((graphicalModeControl)->{
@@ -158,13 +164,18 @@ final class MainLayout extends LayoutBase implements ConsoleArea.InputHandler
 				 for(var l: block.lines)
 				 {
 				     final var b = new StringBuilder();
-				     for(var f: l.fragments)
+				     for(var f: l.getFragments())
 					 b.append("'").append(f.text()).append("',");
 					 final var s = new String(b);
 				     if (!s.isEmpty())
 					 lines.addLine(s.substring(0, s.length() - 1).replaceAll("\u00a0", " "));
 					 }
 
+				 lines.addLine("");
+				 lines.addLine("Геометрия страницы:");
+				 for(var l: getGeometryLines(block))
+				     lines.addLine(l);
+
 				 lines.addLine("");
 				 lines.addLine("Стиль:");
 				 final var style = block.getStyle();
@@ -178,6 +189,36 @@ final class MainLayout extends LayoutBase implements ConsoleArea.InputHandler
 	return true;
     }
 
+    /**
+     * Describes the node of the block with the geometry of the last
+     * scanning, which the inspector shares with the collecting of the
+     * blocks. The geometry is changed on the FX thread, so it is read there.
+     */
+    private List<String> getGeometryLines(WebKitBlock block)
+    {
+	final var res = new ArrayList<String>();
+	final var geometry = app.getGeometry();
+	if (geometry == null)
+	{
+	    res.add("Нет геометрии");
+	    return res;
+	}
+	FxThread.runSync(()->{
+		final int id = block.getGeomId();
+		final int slot = geometry.getSlot(id);
+		if (slot < 0)
+		{
+		    res.add("Узел не сканирован");
+		    return;
+		}
+		res.add("Размеры: " + geometry.getXAt(slot) + ", " + geometry.getYAt(slot) + ", " + geometry.getWidthAt(slot) + ", " + geometry.getHeightAt(slot));
+		res.add("Отсечён: " + (geometry.isPrunedAt(slot)?"да":"нет"));
+		res.add("Скрыт: " + (geometry.isInvisibleAt(slot)?"да":"нет"));
+		res.add("Текст: " + geometry.getText(id).replaceAll("\u00a0", " "));
+	    });
+	return res;
+    }
+
     private boolean actShowGraphical()
     {
 	app.getLuwrain().showGraphical((graphicalModeControl)->{
@@ -213,7 +254,7 @@ final class MainLayout extends LayoutBase implements ConsoleArea.InputHandler
 
     private final class BlocksAppearance extends ListUtils.AbstractAppearance<WebKitBlock>
     {
-	@Override public void announceItem(WebKitBlock block, Set<Flags> flags) { getLuwrain().setEventResponse(listItem(Sounds.LIST_ITEM, block.text, Suggestions.LIST_ITEM)); }
-	@Override public String getScreenAppearance(WebKitBlock block, Set<Flags> flags) { return block.text; }
+	@Override public void announceItem(WebKitBlock block, Set<Flags> flags) { getLuwrain().setEventResponse(listItem(Sounds.LIST_ITEM, block.getText(), Suggestions.LIST_ITEM)); }
+	@Override public String getScreenAppearance(WebKitBlock block, Set<Flags> flags) { return block.getText(); }
     }
 }
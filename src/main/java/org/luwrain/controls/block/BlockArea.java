@@ -82,6 +82,8 @@ public class BlockArea implements Area
     public void setBlocks(Block[] blocks)
     {
 	notNull(blocks, "blocks");
+	final var event = new SetBlocksEvent();
+	event.begin();
 	this.blocks.clear();
 	this.blocks.addAll(Arrays.asList(blocks));
 	this.view = new View(appearance, this.blocks);
@@ -91,6 +93,65 @@ public class BlockArea implements Area
 	context.onAreaNewHotPoint(this);
 	context.onAreaNewName(this);
 	debug(LOG_COMPONENT, "Setting " + this.blocks.size() + " blocks");
+	if (event.shouldCommit())
+	{
+	    event.blockCount = blocks.length;
+	    event.lineCount = view.getLineCount();
+	    event.commit();
+	}
+    }
+
+    /**
+     * Replaces the blocks with the new version of the same content. The hot
+     * point stays on the block and the line with the same numbers, if the
+     * new content has them, so the user isn't thrown to the beginning on
+     * every update of the page.
+     */
+    public void updateBlocks(Block[] blocks)
+    {
+	notNull(blocks, "blocks");
+	if (isEmpty() || blocks.length == 0)
+	{
+	    setBlocks(blocks);
+	    return;
+	}
+	final int blockIndex = Math.min(it.blockIndex, blocks.length - 1);
+	final int lineIndex = Math.max(Math.min(it.lineIndex, blocks[blockIndex].getLineCount() - 1), 0);
+	this.blocks.clear();
+	this.blocks.addAll(Arrays.asList(blocks));
+	this.view = new View(appearance, this.blocks);
+	this.it = new BlockIterator(this, blockIndex, lineIndex);
+	if (blocks[blockIndex].getLineCount() > 0)
+	    this.hotPointX = Math.min(hotPointX, it.getLineText(appearance).length()); else
+	    this.hotPointX = 0;
+	context.onAreaNewContent(this);
+	context.onAreaNewHotPoint(this);
+	debug(LOG_COMPONENT, "Updating " + this.blocks.size() + " blocks");
+    }
+
+    /**
+     * Adds the blocks below the ones already shown. The hot point keeps its
+     * position, so the user may continue reading while the rest of the
+     * content arrives.
+     */
+    public void appendBlocks(Block[] blocks)
+    {
+	notNull(blocks, "blocks");
+	if (isEmpty())
+	{
+	    setBlocks(blocks);
+	    return;
+	}
+	final var newBlocks = Arrays.asList(blocks);
+	this.blocks.addAll(newBlocks);
+	this.view.append(newBlocks);
+	context.onAreaNewContent(this);
+	debug(LOG_COMPONENT, "Appending " + blocks.length + " blocks, " + this.blocks.size() + " in total");
+    }
+
+    public int getBlockCount()
+    {
+	return blocks.size();
     }
 
     public boolean isEmpty()
@@ -0,0 +1,39 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+
+package org.luwrain.controls.block;
+
+import jdk.jfr.*;
+
+/**
+ * The event of JDK Flight Recorder for the replacement of all blocks of
+ * {@link BlockArea}. It goes to the same category as the events of the
+ * page processing in {@code org.luwrain.web.WebEvents}.
+ */
+@Name("org.luwrain.web.SetBlocks")
+@Label("Blocks Shown")
+@Category({"LUWRAIN", "Web"})
+@Description("The replacement of all blocks shown in the area")
+@StackTrace(false)
+final class SetBlocksEvent extends Event
+{
+    @Label("Blocks")
+    int blockCount;
+
+    @Label("Lines")
+    int lineCount;
+}
@@ -27,7 +27,12 @@ public final class View implements Lines
 {
     private final BlockArea.Appearance appearance;
     private final ArrayList<Block> blocks = new ArrayList<>();
+    //The blocks crossing every row, null for the empty rows
+    private final ArrayList<List<Block>> rows = new ArrayList<>();
+    //The rows already made, null for the ones never asked for
     private final ArrayList<String> lines = new ArrayList<>();
+    private int width = 0;
+    private String emptyLine = "";
 
     public View(BlockArea.Appearance appearance, List<Block> blocks)
     {
@@ -35,25 +40,50 @@ public final class View implements Lines
 	notNull(blocks, "blocks");
 	this.appearance = appearance;
 	this.blocks.addAll(blocks);
-	buildLines();
+	paint(this.blocks);
     }
 
     @Override public int getLineCount() {
-	return Math.max(lines.size(), 1);
+	return Math.max(rows.size(), 1);
     }
 
+    /**
+     * Returns the row of the view. The row is made on the first request
+     * from the lines of the blocks crossing it, so the text of the lines
+     * is taken only for the rows actually shown or read.
+     */
     @Override public String getLine(int index)
     {
 	if (index < 0)
 	    throw new IllegalArgumentException("index (" + index + ") can't be negative");
-	if (index >= lines.size())
+	if (index >= rows.size())
 	    return "";
-	return lines.get(index);
+	final String res = lines.get(index);
+	if (res != null)
+	    return res;
+	final String line = makeLine(index);
+	lines.set(index, line);
+	return line;
     }
 
-    private void buildLines()
+    /**
+     * Adds the blocks to the view. The lines of the blocks already shown
+     * remain in their places, so the hot point of the area stays stable.
+     */
+    public void append(List<Block> newBlocks)
     {
-	int width = 0, height = 0;
+	notNull(newBlocks, "newBlocks");
+	this.blocks.addAll(newBlocks);
+	paint(newBlocks);
+    }
+
+    /**
+     * Registers the blocks in the rows they cross. The rows made before
+     * are dropped, if the blocks change them.
+     */
+    private void paint(List<Block> blocks)
+    {
+	int width = this.width, height = rows.size();
 	for(var b: blocks)
 	{
 	    width = Math.max(width, b.getX() + b.getWidth());
@@ -61,25 +91,55 @@ public final class View implements Lines
 	}
 	if (width == 0)
 	    return;
-	String emptyLine = " ";
-	while (emptyLine.length() < width)
-	    if (emptyLine.length() * 2 < width)
-		emptyLine = emptyLine + emptyLine; else
-		emptyLine += " ";
+	if (width > this.width)
+	{
+	    String emptyLine = " ";
+	    while (emptyLine.length() < width)
+		if (emptyLine.length() * 2 < width)
+		    emptyLine = emptyLine + emptyLine; else
+		    emptyLine += " ";
+	    this.emptyLine = emptyLine;
+	    this.width = width;
+	    Collections.fill(lines, null);
+	}
+	rows.ensureCapacity(height);
 	lines.ensureCapacity(height);
-	while(lines.size() < height)
-	    lines.add(emptyLine);
+	while(rows.size() < height)
+	{
+	    rows.add(null);
+	    lines.add(null);
+	}
 	for(var b: blocks)
 	    for(int i = 0;i < b.getLineCount();i++)
 	    {
-		String line = appearance.getBlockLineTextAppearance(b, b.getLine(i));
-		if (line.length() > b.getWidth())
-		    line = line.substring(0, b.getWidth());
-		if (line.length() < b.getWidth())
-		    line = line + emptyLine.substring(0, b.getWidth() - line.length());
 		final int lineIndex = b.getY() + i;
-		final String origLine = lines.get(lineIndex);
-		lines.set(lineIndex, origLine.substring(0, b.getX()) + line + origLine.substring(b.getX() + b.getWidth()));
+		List<Block> row = rows.get(lineIndex);
+		if (row == null)
+		{
+		    row = new ArrayList<>(1);
+		    rows.set(lineIndex, row);
+		}
+		row.add(b);
+		lines.set(lineIndex, null);
 	    }
-		    }
+    }
+
+    private String makeLine(int index)
+    {
+	final List<Block> row = rows.get(index);
+	if (row == null)
+	    return emptyLine;
+	final var res = new StringBuilder(emptyLine);
+	for(var b: row)
+	{
+	    String line = appearance.getBlockLineTextAppearance(b, b.getLine(index - b.getY()));
+	    if (line.length() > b.getWidth())
+		line = line.substring(0, b.getWidth());
+	    res.replace(b.getX(), b.getX() + line.length(), line);
+	    //The rest of the width of the block is cleared from the blocks painted before
+	    for(int i = b.getX() + line.length();i < b.getX() + b.getWidth();i++)
+		res.setCharAt(i, ' ');
+	}
+	return new String(res);
+    }
 }
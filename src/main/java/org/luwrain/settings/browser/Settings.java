@@ -29,6 +29,14 @@ public interface Settings
     void setUserAgent(String value);
     boolean getJavaScriptEnabled(boolean defValue);
     void setJavaScriptEnabled(boolean value);
+    String getTagClasses(String defValue);
+    void setTagClasses(String value);
+    boolean getUnicodeLineBreaking(boolean defValue);
+    void setUnicodeLineBreaking(boolean value);
+    int getUpdateQuietPeriod(int defValue);
+    void setUpdateQuietPeriod(int value);
+    int getUpdateMaxStaleness(int defValue);
+    void setUpdateMaxStaleness(int value);
 
     static public Settings create(Registry registry)
     {
@@ -20,51 +20,484 @@ import java.util.*;
 
 import static org.luwrain.util.RangeUtils.*;
 
+/**
+ * Moves the blocks down so that they don't overlap the blocks above them.
+ * The positions of the blocks are copied into the columns of the primitive
+ * arrays, all calculations are made over them and the results are written
+ * back to the blocks. The blocks are swept from top to bottom, the blocks
+ * already placed are kept in the index of their horizontal extents, so
+ * every block is placed with two queries to the index instead of checking
+ * all the blocks above it.
+ */
 public final class BlockGeom
 {
+    //The number of the checks of the pairs of the blocks for every block, after which the update falls back to the sweep
+    static private final int UPDATE_BUDGET_FACTOR = 32;
+
     public final Block[] blocks;
     private final int count;
-    private int[][] matrix = null;
+    //The columns of the positions, in the order of the blocks
+    private final int[] left, right, top, height;
+    private int[] srcTops = null;
+    //The placed blocks above the current row and the placed blocks of the current row, having the same original top
+    private IntervalIndex above = null, row = null;
+    private int rowStart = 0, processed = 0;
+    private Map<Block, Integer> indices = null;
 
     public BlockGeom(List<? extends Block> blocks)
     {
 	this.blocks = blocks.toArray(new Block[blocks.size()]);
 	this.count = blocks.size();
+	this.left = new int[count];
+	this.right = new int[count];
+	this.top = new int[count];
+	this.height = new int[count];
+	for(int i = 0;i < count;i++)
+	{
+	    final Block b = this.blocks[i];
+	    left[i] = b.left;
+	    right[i] = b.right;
+	    top[i] = b.top;
+	    height[i] = b.height;
+	}
     }
 
     	public void process()
 	{
-	    Arrays.sort(blocks);
-	    buildMatrix();
+	    sort();
+	    process(0, count);
+	}
+
+    /**
+     * Scales the horizontal positions and the tops of the blocks. The new
+     * positions are given to the blocks by {@code sort()}, which must
+     * follow.
+     *
+     * @param scale The factor to multiply the positions by
+     * @param minWidth The minimal width of the block after the scaling
+     */
+    public void rescale(float scale, int minWidth)
+    {
+	if (srcTops != null)
+	    throw new IllegalStateException("The blocks are already sorted");
+	for(int i = 0;i < count;i++)
+	{
+	    left[i] = (int)(scale * left[i]);
+	    right[i] = Math.max((int)(scale * right[i]), left[i] + minWidth);
+	    top[i] = (int)(scale * top[i]);
+	}
+    }
+
+    /**
+     * Sorts the blocks from top to bottom and remembers their original
+     * vertical positions. The blocks with the same top go from left to
+     * right, the blocks with the same top and left keep their order. Must
+     * be called before {@code process(from, to)}.
+     */
+    public void sort()
+    {
+	final int[] order = sortIndex(top, left, count);
+	final Block[] srcBlocks = blocks.clone();
+	final int[] srcLeft = left.clone(), srcRight = right.clone(), srcTop = top.clone(), srcHeight = height.clone();
+	for(int i = 0;i < count;i++)
+	{
+	    final int k = order[i];
+	    final Block b = srcBlocks[k];
+	    blocks[i] = b;
+	    b.left = left[i] = srcLeft[k];
+	    b.right = right[i] = srcRight[k];
+	    b.top = top[i] = srcTop[k];
+	    height[i] = srcHeight[k];
+	}
+	this.srcTops = top.clone();
+	final int[] lefts = left.clone();
+	Arrays.sort(lefts);
+	int coordCount = 0;
+	for(int i = 0;i < count;i++)
+	    if (coordCount == 0 || lefts[i] != lefts[coordCount - 1])
+		lefts[coordCount++] = lefts[i];
+	final int[] coords = Arrays.copyOf(lefts, coordCount);
+	this.above = new IntervalIndex(coords);
+	this.row = new IntervalIndex(coords);
+	this.rowStart = 0;
+	this.processed = 0;
+	this.indices = null;
+    }
+
+    /**
+     * Moves down the sorted blocks in the given range so they don't overlap
+     * the blocks above them. The final position of a block depends only on
+     * the blocks before it, so the blocks may be processed in consecutive
+     * ranges from top to bottom, the heights of all blocks in the range
+     * are taken from the blocks when the range is processed.
+     *
+     * @param from The index of the first block to process, must be the end of the previous range
+     * @param to The index of the block after the last one to process
+     */
+    public void process(int from, int to)
+    {
+	if (srcTops == null)
+	    throw new IllegalStateException("The blocks aren't sorted");
+	if (from < 0 || to > count || from > to)
+	    throw new IllegalArgumentException("Illegal range from " + from + " to " + to + " with " + count + " blocks");
+	if (from != processed)
+	    throw new IllegalStateException("The blocks must be processed in consecutive ranges, the next block is " + processed + ", not " + from);
+	for(int j = from;j < to;j++)
+	    height[j] = blocks[j].height;
+	placeBlocks(from, to);
+	processed = to;
+    }
+
+    private void placeBlocks(int from, int to)
+    {
+	for(int j = from;j < to;j++)
+	{
+	    if (srcTops[j] != srcTops[rowStart])
+	    {
+		for(int i = rowStart;i < j;i++)
+		    above.add(left[i], right[i], getKey(i));
+		row.clear();
+		rowStart = j;
+	    }
+	    if (right[j] > left[j])
+	    {
+		//The space to the blocks above is the difference of the original tops, to the blocks of the same row it is 1
+		final int aboveKey = above.query(left[j], right[j]);
+		if (aboveKey != IntervalIndex.NONE)
+		    top[j] = Math.max(top[j], aboveKey + srcTops[j]);
+		final int rowKey = row.query(left[j], right[j]);
+		if (rowKey != IntervalIndex.NONE)
+		    top[j] = Math.max(top[j], rowKey + srcTops[j] + 1);
+	    } else
+		//The intersection with the block without the width isn't the range query, checking all blocks above
+		top[j] = getTop(j);
+	    row.add(left[j], right[j], getKey(j));
+	    blocks[j].top = top[j];
+	}
+    }
+
+    /**
+     * Updates the positions of the placed blocks after the change of the
+     * heights of some of them. Only the blocks below the changed ones,
+     * which intersect them horizontally, are checked, and the check goes
+     * further only from the blocks which have actually moved. If the
+     * change touches too much of the page, all blocks are placed again
+     * with the sweep, which is cheaper in that case.
+     *
+     * @param changed The blocks whose heights have changed
+     * @return The blocks which have moved, from top to bottom
+     */
+    public List<Block> update(Collection<? extends Block> changed)
+    {
+	checkIndices();
+	final var dirty = new BitSet(count);
+	long budget = (long)count * UPDATE_BUDGET_FACTOR;
+	for(var b: changed)
+	{
+	    final Integer index = indices.get(b);
+	    if (index == null)
+		throw new IllegalArgumentException("The block isn't placed by this geometry");
+	    height[index.intValue()] = b.height;
+	    budget -= markDependents(index.intValue(), dirty);
+	}
+	final var res = new ArrayList<Block>();
+	final var oldTops = new IdentityHashMap<Block, Integer>();
+	for(int j = dirty.nextSetBit(0);j >= 0;j = dirty.nextSetBit(j + 1))
+	{
+	    if (budget < 0)
+		return processAgain(oldTops);
+	    final int newTop = getTop(j);
+	    budget -= j;
+	    if (newTop == top[j])
+		continue;
+	    oldTops.put(blocks[j], Integer.valueOf(top[j]));
+	    top[j] = newTop;
+	    blocks[j].top = newTop;
+	    res.add(blocks[j]);
+	    budget -= markDependents(j, dirty);
+	}
+	return res;
+    }
+
+    /**
+     * Puts the new version of the placed block, usually the one with the
+     * changed text, in the place of the old one. The new block gets the
+     * horizontal position and the top of the old one, its height is taken
+     * by {@code update()}, which must get the new block among the changed
+     * ones.
+     *
+     * @param block The block placed by this geometry
+     * @param by The block to put in its place
+     */
+    public void replace(Block block, Block by)
+    {
+	checkIndices();
+	final Integer index = indices.get(block);
+	if (index == null)
+	    throw new IllegalArgumentException("The block isn't placed by this geometry");
+	if (indices.containsKey(by))
+	    throw new IllegalArgumentException("The new block is already placed by this geometry");
+	final int i = index.intValue();
+	indices.remove(block);
+	indices.put(by, index);
+	blocks[i] = by;
+	by.left = left[i];
+	by.right = right[i];
+	by.top = top[i];
+    }
+
+    private void checkIndices()
+    {
+	if (srcTops == null || processed != count)
+	    throw new IllegalStateException("The blocks must be processed before the update");
+	if (indices == null)
+	{
+	    indices = new IdentityHashMap<>();
 	    for(int i = 0;i < count;i++)
-		for(int j = i + 1;j < count;j++)
-		{
-		    final Block b1 = blocks[i], b2 = blocks[j];
-		    final int space = matrix[i][j];
-		    if (space < 0)//Completely independent blocks
-			continue;
-		    b2.top = Math.max(b2.top, b1.top + b1.height + space - 1);
-		}
+		indices.put(blocks[i], Integer.valueOf(i));
 	}
+    }
+
+    /**
+     * Calculates the position of the block checking all the blocks above it.
+     */
+    private int getTop(int j)
+    {
+	int res = srcTops[j];
+	for(int i = 0;i < j;i++)
+	{
+	    final int space = getSpace(i, j);
+	    if (space < 0)//Completely independent blocks
+		continue;
+	    res = Math.max(res, top[i] + height[i] + space - 1);
+	}
+	return res;
+    }
 
-    private void buildMatrix()
+    /**
+     * Marks the blocks below the given one which intersect it.
+     *
+     * @return The number of the checked blocks
+     */
+    private int markDependents(int i, BitSet dirty)
     {
-    this.matrix = new int[count][count];
-    for(int i = 0;i < count;i++)
-	for(int j = 0;j < count;j++)
-	    matrix[i][j] = -1;
-    for(int i = 0;i < count;i++)
 	for(int j = i + 1;j < count;j++)
+	    if (getSpace(i, j) >= 0)
+		dirty.set(j);
+	return count - i - 1;
+    }
+
+    /**
+     * Places all blocks again from their original positions.
+     *
+     * @param oldTops The positions before the update of the blocks already moved by it
+     * @return The blocks which have moved, from top to bottom
+     */
+    private List<Block> processAgain(Map<Block, Integer> oldTops)
+    {
+	final int[] tops = top.clone();
+	for(var e: oldTops.entrySet())
+	    tops[indices.get(e.getKey()).intValue()] = e.getValue().intValue();
+	System.arraycopy(srcTops, 0, top, 0, count);
+	above.clear();
+	row.clear();
+	rowStart = 0;
+	placeBlocks(0, count);
+	final var res = new ArrayList<Block>();
+	for(int i = 0;i < count;i++)
+	    if (top[i] != tops[i])
+		res.add(blocks[i]);
+	return res;
+    }
+
+    /**
+     * Calculates the part of the lowest position of the blocks below the
+     * placed block, which doesn't depend on the original tops of the blocks
+     * below.
+     */
+    private int getKey(int i)
+    {
+	return top[i] - srcTops[i] + height[i] - 1;
+    }
+
+    /**
+     * Calculates the vertical space between two blocks by their original
+     * positions.
+     *
+     * @return The space between the blocks or -1, if the blocks are completely independent
+     */
+    private int getSpace(int i, int j)
+    {
+	if (!intersects(left[i], right[i] - left[i], left[j], right[j] - left[i]))
+	    return -1;
+	if (srcTops[i] == srcTops[j])
+	    return 1;
+	return srcTops[j] - srcTops[i];
+    }
+
+    /**
+     * Makes the stable order of the items by two keys with the radix sort,
+     * byte by byte from the lowest byte of the secondary key to the highest
+     * byte of the primary one. The passes where all items have the same
+     * byte are skipped.
+     *
+     * @return The indices of the items in the sorted order
+     */
+    static int[] sortIndex(int[] primary, int[] secondary, int count)
+    {
+	int[] order = new int[count], buf = new int[count];
+	for(int i = 0;i < count;i++)
+	    order[i] = i;
+	final int[] counts = new int[257];
+	for(int pass = 0;pass < 8;pass++)
 	{
-	    final Block b1 = blocks[i], b2 = blocks[j];
-	    if (!intersects(b1.left, b1.right - b1.left, b2.left, b2.right - b1.left))
+	    final int[] key = pass < 4?secondary:primary;
+	    final int shift = (pass % 4) * 8;
+	    Arrays.fill(counts, 0);
+	    //Flipping the sign bit, so the negative numbers go first
+	    for(int i = 0;i < count;i++)
+		counts[(((key[i] ^ Integer.MIN_VALUE) >>> shift) & 0xff) + 1]++;
+	    boolean single = false;
+	    for(int d = 1;d <= 256;d++)
+		if (counts[d] == count)
+		    single = true;
+	    if (single)
 		continue;
-	    if (b1.top == b2.top)
-		matrix[i][j] = 1; else
-		matrix[i][j] = b2.top - b1.top;
-	    assert matrix[i][j] >= 0;
+	    for(int d = 1;d <= 256;d++)
+		counts[d] += counts[d - 1];
+	    for(int i = 0;i < count;i++)
+	    {
+		final int k = order[i];
+		buf[counts[((key[k] ^ Integer.MIN_VALUE) >>> shift) & 0xff]++] = k;
+	    }
+	    final int[] t = order;
+	    order = buf;
+	    buf = t;
 	}
-}
+	return order;
+    }
+
+    /**
+     * The index of the horizontal extents of the placed blocks, giving the
+     * maximum of the values of the extents intersecting the given block in
+     * the sense of {@code getSpace()}: the block above must have the width,
+     * and the left end of the block below must lie inside it, or the left
+     * end of the block above must lie between the left end and the middle
+     * of the block below. The first case is the stabbing query, the second
+     * one is the range query over the left ends, both are answered by the
+     * segment trees over the left ends of all blocks in {@code
+     * O(log n)}. The index is cleared in constant time, the nodes of the
+     * previous generations are considered empty.
+     */
+    static private final class IntervalIndex
+    {
+	static final int NONE = Integer.MIN_VALUE;
+
+	private final int[] coords;
+	private final int size;
+	//The maximums of the values of the extents covering the whole segment of the node
+	private final int[] covering;
+	//The maximums of the values of the extents whose left ends are in the segment of the node
+	private final int[] beginning;
+	private final int[] gens;
+	private int gen = 1;
+
+	IntervalIndex(int[] coords)
+	{
+	    this.coords = coords;
+	    int size = 1;
+	    while(size < coords.length)
+		size *= 2;
+	    this.size = size;
+	    this.covering = new int[2 * size];
+	    this.beginning = new int[2 * size];
+	    this.gens = new int[2 * size];
+	}
+
+	void add(int left, int right, int value)
+	{
+	    if (right <= left)
+		return;
+	    final int from = Arrays.binarySearch(coords, left), to = upperBound(coords, right - 1) - 1;
+	    for(int l = from + size, r = to + size + 1;l < r;l >>= 1, r >>= 1)
+	    {
+		if ((l & 1) == 1)
+		    cover(l++, value);
+		if ((r & 1) == 1)
+		    cover(--r, value);
+	    }
+	    for(int node = from + size;node > 0;node >>= 1)
+	    {
+		touch(node);
+		beginning[node] = Math.max(beginning[node], value);
+	    }
+	}
+
+	/**
+	 * Finds the maximum of the values of the extents intersecting the
+	 * block with the width.
+	 *
+	 * @return The maximum or {@code NONE}, if there are no such extents
+	 */
+	int query(int left, int right)
+	{
+	    final int pos = Arrays.binarySearch(coords, left);
+	    int res = NONE;
+	    for(int node = pos + size;node > 0;node >>= 1)
+		if (gens[node] == gen)
+		    res = Math.max(res, covering[node]);
+	    final int middle = (int)Math.floorDiv((long)left + right - 1, 2);
+	    for(int l = pos + 1 + size, r = upperBound(coords, middle) + size;l < r;l >>= 1, r >>= 1)
+	    {
+		if ((l & 1) == 1)
+		{
+		    if (gens[l] == gen)
+			res = Math.max(res, beginning[l]);
+		    l++;
+		}
+		if ((r & 1) == 1)
+		{
+		    r--;
+		    if (gens[r] == gen)
+			res = Math.max(res, beginning[r]);
+		}
+	    }
+	    return res;
+	}
+
+	void clear()
+	{
+	    gen++;
+	}
+
+	private void cover(int node, int value)
+	{
+	    touch(node);
+	    covering[node] = Math.max(covering[node], value);
+	}
+
+	private void touch(int node)
+	{
+	    if (gens[node] == gen)
+		return;
+	    gens[node] = gen;
+	    covering[node] = NONE;
+	    beginning[node] = NONE;
+	}
+
+	static private int upperBound(int[] items, int value)
+	{
+	    int from = 0, to = items.length;
+	    while(from < to)
+	    {
+		final int mid = (from + to) >>> 1;
+		if (items[mid] <= value)
+		    from = mid + 1; else
+		    to = mid;
+	    }
+	    return from;
+	}
+    }
 
     static public class Block implements Comparable<Block>
     {
@@ -72,8 +505,8 @@ public final class BlockGeom
 	@Override public  int compareTo(Block b)
 	{
 	    if (top != b.top)
-	    return Integer.valueOf(top).compareTo(Integer.valueOf(b.top));
-	    return Integer.valueOf(left).compareTo(Integer.valueOf(b.left));
+	    return Integer.compare(top, b.top);
+	    return Integer.compare(left, b.left);
 	}
     }
 }
@@ -17,6 +17,7 @@
 package org.luwrain.web;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import static org.luwrain.util.RangeUtils.*;
 
@@ -27,17 +28,208 @@ public abstract class BlocksCollector<N, B>
     final LinkedList<B> blocksStack = new LinkedList<>();
     final LinkedList<N> markupStack = new LinkedList<>();
     final ArrayList<B> blocks = new ArrayList<>();
+    private int prunedCount = 0, forkedCount = 0;
+    //The counters for the events of the flight recorder
+    private int nodeCount = 0, createdCount = 0, savedCount = 0;
 
     public abstract List<N> getChildNodes(N node);
+    public abstract N getFirstChild(N node);
+    public abstract N getNextSibling(N node);
     public abstract boolean isMarkupNode(N node);
     public abstract boolean isTextNode(N node);
     public abstract void addTextToBlock(N node, B block);
     public abstract B createBlock(N node);
     public abstract boolean saveBlock(B block);
 
-    public void process(N node)
+    /**
+     * Checks that the node and all its descendants are known to be
+     * invisible, so the whole subtree is skipped.
+     */
+    public boolean isPrunedNode(N node)
+    {
+	return false;
+    }
+
+    /**
+     * Checks that the subtree of the node is collected elsewhere, for
+     * example by the separate parallel task, so it is skipped here. Unlike
+     * the pruned subtrees, it isn't invisible.
+     */
+    public boolean isForkedNode(N node)
+    {
+	return false;
+    }
+
+    /**
+     * The number of subtrees skipped as invisible.
+     */
+    public int getPrunedCount()
+    {
+	return prunedCount;
+    }
+
+    /**
+     * The number of subtrees left to be collected elsewhere.
+     */
+    public int getForkedCount()
+    {
+	return forkedCount;
+    }
+
+    /**
+     * Adds the counters of this collector to the event, which may sum up
+     * the work of several collectors.
+     */
+    void addCounters(WebEvents.Collect event)
+    {
+	event.nodeCount += nodeCount;
+	event.createdCount += createdCount;
+	event.savedCount += savedCount;
+	event.prunedCount += prunedCount;
+	event.forkedCount += forkedCount;
+    }
+
+    /**
+     * Collects the blocks of the subtree without recursion. The children
+     * are taken with {@code getFirstChild()} and {@code getNextSibling()},
+     * the path from the root to the current node is kept in the explicit
+     * stack, so the depth of the markup isn't limited by the stack of the
+     * thread. The result is the same as the one of {@code processRecursively()}.
+     */
+    public void process(N root)
+    {
+	final var path = new ArrayDeque<N>();
+	N node = root;
+	while(true)
+	{
+	    if (enter(node))
+	    {
+		N child = null;
+		try {
+		    child = getFirstChild(node);
+		}
+		catch(Throwable e)
+		{
+		    log(e.getMessage());
+		}
+		if (child != null)
+		{
+		    path.push(node);
+		    node = child;
+		    continue;
+		}
+		leave(node);
+	    }
+	    //Moving to the next sibling, leaving the ancestors without the next siblings
+	    while(true)
+	    {
+		if (path.isEmpty())
+		    return;
+		N next = null;
+		try {
+		    next = getNextSibling(node);
+		}
+		catch(Throwable e)
+		{
+		    log(e.getMessage());
+		}
+		if (next != null)
+		{
+		    node = next;
+		    break;
+		}
+		node = path.pop();
+		leave(node);
+	    }
+	}
+    }
+
+    /**
+     * Handles the node before its children.
+     *
+     * @return True if the children of the node must be visited and {@code leave()} must be called after them
+     */
+    private boolean enter(N node)
+    {
+	nodeCount++;
+	try {
+	    if (isForkedNode(node))
+	    {
+		forkedCount++;
+		return false;
+	    }
+	    if (isPrunedNode(node))
+	    {
+		prunedCount++;
+		return false;
+	    }
+	    if (isTextNode(node))
+	    {
+		if (!blocksStack.isEmpty())
+		    addTextToBlock(node, blocksStack.getLast());
+		return false;
+	    }
+	    if (isMarkupNode(node))
+	    {
+		markupStack.addLast(node);
+		return true;
+	    }
+	    blocksStack.addLast(createBlock(node));
+	    createdCount++;
+	    return true;
+	}
+	catch(CancellationException e)
+	{
+	    //The cancellation of the collecting isn't the error of the node
+	    throw e;
+	}
+	catch(Throwable e)
+	{
+	    log(e.getMessage());
+	    return false;
+	}
+    }
+
+    private void leave(N node)
     {
 	try {
+	    //Only the markup nodes are put into markupStack, the nested ones are already taken out
+	    if (!markupStack.isEmpty() && markupStack.getLast() == node)
+	    {
+		markupStack.pollLast();
+		return;
+	    }
+	    final B block = blocksStack.pollLast();
+	    if (saveBlock(block))
+	    {
+		this.blocks.add(block);
+		savedCount++;
+	    }
+	}
+	catch(Throwable e)
+	{
+	    log(e.getMessage());
+	}
+    }
+
+    /**
+     * The recursive traversal taking the children with {@code
+     * getChildNodes()}. It is kept as the reference implementation for
+     * {@code process()}.
+     */
+    public void processRecursively(N node)
+    {
+	try {
+	if (isForkedNode(node))
+	{
+	    forkedCount++;
+	    return;
+	}
+	if (isPrunedNode(node))
+	{
+	    prunedCount++;
+	    return;
+	}
 	if (isTextNode(node))
 	{
 	    if (!blocksStack.isEmpty())
@@ -49,13 +241,13 @@ public abstract class BlocksCollector<N, B>
 	{
 	    markupStack.addLast(node);
 	    for(final var c: children)
-		process(c);
+		processRecursively(c);
 	    markupStack.pollLast();
 	    return;
 	}
 	blocksStack.addLast(createBlock(node));
 		    for(final var c: children)
-		process(c);
+		processRecursively(c);
 		    final B block = blocksStack.pollLast();
 		    if (saveBlock(block))
 			this.blocks.add(block);
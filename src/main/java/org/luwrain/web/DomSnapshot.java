@@ -0,0 +1,323 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+
+import org.w3c.dom.*;
+
+import com.sun.webkit.dom.*;
+
+import static org.luwrain.core.NullCheck.*;
+import static org.luwrain.graphical.FxThread.*;
+
+/**
+ * The immutable copy of the DOM tree prepared for the collecting of the
+ * blocks. The nodes are numbered in the document order, so the subtree of
+ * the node {@code i} occupies the indices from {@code i} to {@code
+ * getEnd(i)} exclusively. Only the text nodes and the elements are copied,
+ * the subtrees of the invisible elements and of the tags classified as
+ * {@code SKIP} are represented by their roots only, the texts right inside
+ * the elements with the hidden visibility are dropped. The snapshot is taken
+ * on the FX thread, after that it can be read on any thread without
+ * touching the DOM. All texts are kept in the single {@link TextArena}, the
+ * runs, fragments and lines of the blocks are the views of it.
+ */
+public final class DomSnapshot
+{
+    static public final byte
+	TEXT = 0,
+	INLINE = 1,
+	BLOCK = 2,
+	PRUNED = 3;
+
+    static private final int
+	INITIAL_CAPACITY = 1024;
+
+    private int count = 0;
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] parents = new int[INITIAL_CAPACITY], ends = new int[INITIAL_CAPACITY], tags = new int[INITIAL_CAPACITY], ids = new int[INITIAL_CAPACITY];
+    private int[] x = new int[INITIAL_CAPACITY], y = new int[INITIAL_CAPACITY], width = new int[INITIAL_CAPACITY], height = new int[INITIAL_CAPACITY];
+    private CharSequence[] texts = new CharSequence[INITIAL_CAPACITY];
+    private NodeImpl[] nodes = new NodeImpl[INITIAL_CAPACITY];
+    private final TextArena arena = new TextArena();
+    private final BitSet geomPresent = new BitSet();
+    //The elements with the hidden visibility, their own texts aren't copied
+    private final BitSet invisible = new BitSet();
+    private final List<String> tagNames = new ArrayList<>();
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private final Map<String, Integer> unknownTags = new HashMap<>();
+    private int prunedCount = 0;
+    private boolean partial = false;
+    //The indices of the elements by the identifiers of the geometry, made on the first request
+    private Map<Integer, Integer> indicesById = null;
+
+    private DomSnapshot()
+    {
+    }
+
+    public int size() { return count; }
+    public byte getKind(int index) { checkIndex(index); return kinds[index]; }
+    public int getParent(int index) { checkIndex(index); return parents[index]; }
+    public int getEnd(int index) { checkIndex(index); return ends[index]; }
+    public CharSequence getText(int index) { checkIndex(index); return texts[index]; }
+    public boolean hasGeom(int index) { checkIndex(index); return geomPresent.get(index); }
+    public int getX(int index) { checkIndex(index); return x[index]; }
+    public int getY(int index) { checkIndex(index); return y[index]; }
+    public int getWidth(int index) { checkIndex(index); return width[index]; }
+    public int getHeight(int index) { checkIndex(index); return height[index]; }
+
+    /**
+     * Returns the identifier the element had in the page geometry when the
+     * snapshot was taken.
+     *
+     * @return The identifier or -1, if the node wasn't scanned or isn't an element
+     */
+    public int getGeomId(int index) { checkIndex(index); return ids[index]; }
+
+    /**
+     * Checks that the geometry was known only for the first screens, so the
+     * children of the elements without the geometry weren't copied.
+     */
+    public boolean isPartial() { return partial; }
+
+    /**
+     * Finds the element by its identifier in the page geometry.
+     *
+     * @return The index of the element or -1, if there is no such element in the snapshot
+     */
+    public synchronized int findByGeomId(int id)
+    {
+	if (indicesById == null)
+	{
+	    indicesById = new HashMap<>();
+	    for(int i = 0;i < count;i++)
+		if (ids[i] >= 0)
+		    indicesById.put(Integer.valueOf(ids[i]), Integer.valueOf(i));
+	}
+	final Integer res = indicesById.get(Integer.valueOf(id));
+	return res != null?res.intValue():-1;
+    }
+
+    /**
+     * Returns the name of the tag of the element.
+     *
+     * @return The name of the tag or null, if the node isn't an element
+     */
+    public String getTagName(int index)
+    {
+	checkIndex(index);
+	return tags[index] >= 0?tagNames.get(tags[index]):null;
+    }
+
+    /**
+     * Returns the node the item was copied from. The node may be used only
+     * on the FX thread.
+     */
+    public NodeImpl getNode(int index)
+    {
+	checkIndex(index);
+	return nodes[index];
+    }
+
+    public int getFirstChild(int index)
+    {
+	checkIndex(index);
+	return ends[index] > index + 1?index + 1:-1;
+    }
+
+    public int getNextSibling(int index)
+    {
+	checkIndex(index);
+	final int parent = parents[index];
+	if (parent < 0)
+	    return -1;
+	return ends[index] < ends[parent]?ends[index]:-1;
+    }
+
+    /**
+     * The total number of the characters of all texts of the snapshot.
+     */
+    public long getTextLength()
+    {
+	return arena.getLength();
+    }
+
+    /**
+     * The number of the subtrees represented only by their roots.
+     */
+    public int getPrunedCount()
+    {
+	return prunedCount;
+    }
+
+    /**
+     * The number of the nodes of every tag missing in the tag table.
+     */
+    public Map<String, Integer> getUnknownTags()
+    {
+	return Collections.unmodifiableMap(unknownTags);
+    }
+
+    /**
+     * Copies the subtree of the DOM. The nodes are visited without
+     * recursion, through {@code getFirstChild()} and {@code
+     * getNextSibling()}.
+     *
+     * @param geom The geometry of the page
+     * @param tagTable The classification of the tags
+     * @param root The root of the subtree to copy, usually the body of the document
+     * @param partial True if the geometry is known only for the first screens, the children of the elements without the geometry aren't copied
+     */
+    static public DomSnapshot create(WebKitGeom geom, TagTable tagTable, Node root, boolean partial)
+    {
+	notNull(geom, "geom");
+	notNull(tagTable, "tagTable");
+	notNull(root, "root");
+	ensure();
+	final var s = new DomSnapshot();
+	s.partial = partial;
+	final var pathNodes = new ArrayDeque<Node>();
+	final var pathIndices = new ArrayDeque<Integer>();
+	Node node = root;
+	while(true)
+	{
+	    final int index = s.add(node, pathIndices.isEmpty()?-1:pathIndices.peek().intValue(), geom, tagTable);
+	    if (index >= 0 && (s.kinds[index] == INLINE || s.kinds[index] == BLOCK) &&
+		(!partial || node == root || s.geomPresent.get(index)))
+	    {
+		final Node child = node.getFirstChild();
+		if (child != null)
+		{
+		    pathNodes.push(node);
+		    pathIndices.push(Integer.valueOf(index));
+		    node = child;
+		    continue;
+		}
+	    }
+	    if (index >= 0)
+		s.ends[index] = s.count;
+	    //Moving to the next sibling, closing the ancestors without the next siblings
+	    while(true)
+	    {
+		if (pathNodes.isEmpty())
+		    return s;
+		final Node next = node.getNextSibling();
+		if (next != null)
+		{
+		    node = next;
+		    break;
+		}
+		node = pathNodes.pop();
+		s.ends[pathIndices.pop().intValue()] = s.count;
+	    }
+	}
+    }
+
+    /**
+     * Copies one node without its children.
+     *
+     * @return The index of the new item or -1, if the node isn't copied
+     */
+    private int add(Node node, int parent, WebKitGeom geom, TagTable tagTable)
+    {
+	if (node instanceof TextImpl t)
+	{
+	    if (parent >= 0 && invisible.get(parent))
+		return -1;
+	    final int index = allocate(node, parent, TEXT);
+	    texts[index] = arena.add(t.getWholeText());
+	    return index;
+	}
+	if (!(node instanceof Element el))
+	{
+	    if (!(node instanceof CommentImpl))
+		unknownTags.merge("#" + node.getClass().getSimpleName(), 1, Integer::sum);
+	    return -1;
+	}
+	final String tagName = el.getTagName();
+	TagTable.Kind kind = tagTable.get(tagName);
+	if (kind == null)
+	{
+	    unknownTags.merge(tagName, 1, Integer::sum);
+	    kind = TagTable.Kind.BLOCK;
+	}
+	//The identifier is read from the page and looked up once for all questions about the element
+	final int id = kind != TagTable.Kind.SKIP?geom.getId(node):-1;
+	final int slot = id >= 0?geom.getSlot(id):-1;
+	final int index;
+	if (kind == TagTable.Kind.SKIP || (slot >= 0 && geom.isPrunedAt(slot)))
+	{
+	    index = allocate(node, parent, PRUNED);
+	    prunedCount++;
+	} else
+	    index = allocate(node, parent, kind == TagTable.Kind.INLINE?INLINE:BLOCK);
+	Integer tagId = tagIds.get(tagName);
+	if (tagId == null)
+	{
+	    tagId = Integer.valueOf(tagNames.size());
+	    tagNames.add(tagName);
+	    tagIds.put(tagName, tagId);
+	}
+	tags[index] = tagId.intValue();
+	ids[index] = id;
+	if (kinds[index] != PRUNED && slot >= 0)
+	{
+	    if (geom.isInvisibleAt(slot))
+		invisible.set(index);
+	    x[index] = geom.getXAt(slot);
+	    y[index] = geom.getYAt(slot);
+	    width[index] = geom.getWidthAt(slot);
+	    height[index] = geom.getHeightAt(slot);
+	    geomPresent.set(index);
+	}
+	return index;
+    }
+
+    private int allocate(Node node, int parent, byte kind)
+    {
+	if (count == kinds.length)
+	{
+	    final int newLen = kinds.length * 2;
+	    kinds = Arrays.copyOf(kinds, newLen);
+	    parents = Arrays.copyOf(parents, newLen);
+	    ends = Arrays.copyOf(ends, newLen);
+	    tags = Arrays.copyOf(tags, newLen);
+	    ids = Arrays.copyOf(ids, newLen);
+	    x = Arrays.copyOf(x, newLen);
+	    y = Arrays.copyOf(y, newLen);
+	    width = Arrays.copyOf(width, newLen);
+	    height = Arrays.copyOf(height, newLen);
+	    texts = Arrays.copyOf(texts, newLen);
+	    nodes = Arrays.copyOf(nodes, newLen);
+	}
+	final int index = count++;
+	kinds[index] = kind;
+	parents[index] = parent;
+	ends[index] = index + 1;
+	tags[index] = -1;
+	ids[index] = -1;
+	nodes[index] = (NodeImpl)node;
+	return index;
+    }
+
+    private void checkIndex(int index)
+    {
+	if (index < 0 || index >= count)
+	    throw new IndexOutOfBoundsException("index (" + index + ") must be non-negative and less than " + count);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+
+import static org.luwrain.core.NullCheck.*;
+
+/**
+ * The rule of finding the positions in the text where the new lines may
+ * begin. The breaks of every run are found once and are kept with the run,
+ * so the rule is applied only once for every text of the page. The
+ * implementations must be safe for the use on several threads at once.
+ */
+public interface LineBreaker
+{
+    /**
+     * Breaks only after the spaces, the fastest rule. The texts without
+     * the spaces, like the URLs or the CJK texts, are split at the width of
+     * the block.
+     */
+    static public final LineBreaker WHITESPACE = new WhitespaceLineBreaker();
+
+    /**
+     * Finds the positions where the new lines may begin. The beginning and
+     * the end of the text aren't included.
+     *
+     * @param text The text to find the breaks in
+     * @return The positions in the ascending order
+     */
+    int[] getBreaks(CharSequence text);
+
+    /**
+     * Creates the breaker following the Unicode line breaking rules for the
+     * given locale, see {@link java.text.BreakIterator#getLineInstance(Locale)}.
+     */
+    static public LineBreaker forLocale(Locale locale)
+    {
+	notNull(locale, "locale");
+	return new UnicodeLineBreaker(locale);
+    }
+}
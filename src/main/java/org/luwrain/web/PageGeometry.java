@@ -0,0 +1,437 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+import java.lang.ref.*;
+
+import org.w3c.dom.*;
+import netscape.javascript.*;
+
+import static org.luwrain.core.NullCheck.*;
+
+/**
+ * The geometry of the nodes of one document, indexed by the identifiers
+ * the injection assigns to the nodes. It is shared by the browser and the
+ * web inspector. The rectangles and the positions of the texts are kept in
+ * primitive arrays, the texts of all nodes are stored in the single
+ * buffer. The nodes themselves aren't referenced at all and the document
+ * is referenced weakly, so the geometry never keeps the DOM alive after
+ * navigation. The lookups by the node read its identifier from the page
+ * and don't rely on {@code hashCode()} and {@code equals()} of the DOM
+ * wrappers.
+ * <p>
+ * The identifiers are never reused by the injection, so on the pages
+ * with the constantly replaced content they grow without limit. The
+ * arrays are therefore indexed by the slots, not by the identifiers: the
+ * identifiers are mapped to the slots with an open-addressing table, the
+ * slots of the removed nodes are reused, and {@link #trim()} shrinks the
+ * arrays when the live nodes occupy only a small part of them.
+ */
+public final class PageGeometry
+{
+    static final String
+	ID_PROPERTY = "__lwrId";
+    static private final int
+	INITIAL_CAPACITY = 1024,
+	EMPTY = -1,
+	DELETED = -2;
+
+    private final WeakReference<Document> doc;
+    //The identifiers in the keys, their slots in the values, both arrays have the length of the power of two
+    private int[] keys = newKeys(INITIAL_CAPACITY * 2), values = new int[INITIAL_CAPACITY * 2];
+    private int keyCount = 0, deletedCount = 0;
+    private final BitSet used = new BitSet(), pruned = new BitSet(), invisible = new BitSet();
+    //No slot below this one is free
+    private int freeSlot = 0;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] x = new int[INITIAL_CAPACITY], y = new int[INITIAL_CAPACITY], width = new int[INITIAL_CAPACITY], height = new int[INITIAL_CAPACITY];
+    private int[] textPos = new int[INITIAL_CAPACITY], textLen = new int[INITIAL_CAPACITY];
+    private final StringBuilder text = new StringBuilder();
+    private int garbageLen = 0;
+
+    PageGeometry(Document doc)
+    {
+	notNull(doc, "doc");
+	this.doc = new WeakReference<>(doc);
+    }
+
+    /**
+     * Checks that the geometry was taken for the given document.
+     *
+     * @return True if the geometry belongs to the document, false otherwise or if the document has already gone
+     */
+    public boolean isFor(Document doc)
+    {
+	return this.doc.get() == doc;
+    }
+
+    /**
+     * Reads the identifier of the node assigned by the injection. Every
+     * call crosses to the page, so the callers read it once per node and
+     * use the methods taking the identifier.
+     *
+     * @return The identifier of the node or -1 if the node wasn't scanned
+     */
+    static public int getId(Node node)
+    {
+	if (!(node instanceof JSObject jsObj))
+	    return -1;
+	final Object res = jsObj.getMember(ID_PROPERTY);
+	if (res instanceof Number n)
+	    return n.intValue();
+	return -1;
+    }
+
+    public boolean contains(int id)
+    {
+	return findSlot(id) >= 0;
+    }
+
+    public int size()
+    {
+	return keyCount;
+    }
+
+    /**
+     * Checks that the node is the root of the subtree which the injection
+     * found invisible. The descendants of such nodes aren't scanned.
+     */
+    public boolean isPruned(int id)
+    {
+	final int slot = findSlot(id);
+	return slot >= 0 && pruned.get(slot);
+    }
+
+    /**
+     * Checks that the element has the hidden visibility. Its own texts
+     * aren't shown, but its descendants may override the visibility, so
+     * they are scanned as usual.
+     */
+    public boolean isInvisible(int id)
+    {
+	final int slot = findSlot(id);
+	return slot >= 0 && invisible.get(slot);
+    }
+
+    public int getX(int id) { return x[checkId(id)]; }
+    public int getY(int id) { return y[checkId(id)]; }
+    public int getWidth(int id) { return width[checkId(id)]; }
+    public int getHeight(int id) { return height[checkId(id)]; }
+
+    public String getText(int id)
+    {
+	final int slot = checkId(id);
+	return text.substring(textPos[slot], textPos[slot] + textLen[slot]);
+    }
+
+    /**
+     * Returns the slot of the node in the arrays. Reading the values by
+     * the slot spares the repeated lookups of the identifier, when several
+     * values of the same node are needed. The slot is valid until the
+     * geometry is changed.
+     *
+     * @return The slot of the node or -1, if the identifier isn't known
+     */
+    public int getSlot(int id)
+    {
+	return findSlot(id);
+    }
+
+    public boolean isPrunedAt(int slot) { return pruned.get(checkSlot(slot)); }
+    public boolean isInvisibleAt(int slot) { return invisible.get(checkSlot(slot)); }
+    public int getXAt(int slot) { return x[checkSlot(slot)]; }
+    public int getYAt(int slot) { return y[checkSlot(slot)]; }
+    public int getWidthAt(int slot) { return width[checkSlot(slot)]; }
+    public int getHeightAt(int slot) { return height[checkSlot(slot)]; }
+
+    public GeomEntry getEntry(int id)
+    {
+	final int slot = findSlot(id);
+	if (slot < 0)
+	    return null;
+	return new GeomEntry(x[slot], y[slot], width[slot], height[slot], text.substring(textPos[slot], textPos[slot] + textLen[slot]));
+    }
+
+    /**
+     * Adds the packed scanning result.  The texts are taken as one string
+     * with the zero character as a separator, exactly as the injection
+     * provides them, so they are copied to the buffer at once.
+     *
+     * @param ids The identifiers of the nodes
+     * @param rects The left, top, width and height of every node
+     * @param texts The texts of the nodes separated with the zero character
+     * @param prunedIds The identifiers of the roots of invisible subtrees
+     * @param invisibleIds The identifiers of the elements with the hidden visibility
+     */
+    void add(int[] ids, int[] rects, String texts, int[] prunedIds, int[] invisibleIds)
+    {
+	if (rects.length != ids.length * 4)
+	    throw new IllegalArgumentException("rects must have 4 items for every id (" + rects.length + " for " + ids.length + " ids)");
+	final int base = text.length();
+	text.append(texts);
+	int pos = 0;
+	for(int i = 0;i < ids.length;i++)
+	{
+	    int end = texts.indexOf('\0', pos);
+	    if (end < 0)
+		end = texts.length();
+	    final int k = i * 4;
+	    put(ids[i], rects[k], rects[k + 1], rects[k + 2], rects[k + 3], base + pos, end - pos);
+	    pos = end + 1;
+	}
+	for(int id: prunedIds)
+	{
+	    final int slot = findSlot(id);
+	    if (slot >= 0)
+		pruned.set(slot);
+	}
+	for(int id: invisibleIds)
+	{
+	    final int slot = findSlot(id);
+	    if (slot >= 0)
+		invisible.set(slot);
+	}
+	//The separators are never referenced, there is one less of them than the texts
+	garbageLen += Math.max(ids.length - 1, 0);
+	compactIfNeeded();
+    }
+
+    boolean remove(int id)
+    {
+	final int index = findKey(id);
+	if (index < 0)
+	    return false;
+	final int slot = values[index];
+	keys[index] = DELETED;
+	keyCount--;
+	deletedCount++;
+	used.clear(slot);
+	pruned.clear(slot);
+	invisible.clear(slot);
+	freeSlot = Math.min(freeSlot, slot);
+	garbageLen += textLen[slot];
+	return true;
+    }
+
+    /**
+     * Shrinks the arrays if the live nodes occupy less than a quarter of
+     * them, renumbering the slots densely. Called after the rescanning,
+     * when the removed nodes are already dropped.
+     */
+    void trim()
+    {
+	final int capacity = this.ids.length;
+	if (capacity <= INITIAL_CAPACITY || keyCount * 4 >= capacity)
+	    return;
+	final int newCapacity = Math.max(INITIAL_CAPACITY, keyCount * 2);
+	final int[] newIds = new int[newCapacity];
+	final int[] newX = new int[newCapacity], newY = new int[newCapacity], newWidth = new int[newCapacity], newHeight = new int[newCapacity];
+	final int[] newTextPos = new int[newCapacity], newTextLen = new int[newCapacity];
+	final var newPruned = new BitSet();
+	final var newInvisible = new BitSet();
+	int newSlot = 0;
+	for(int slot = used.nextSetBit(0);slot >= 0;slot = used.nextSetBit(slot + 1), newSlot++)
+	{
+	    newIds[newSlot] = ids[slot];
+	    newX[newSlot] = x[slot];
+	    newY[newSlot] = y[slot];
+	    newWidth[newSlot] = width[slot];
+	    newHeight[newSlot] = height[slot];
+	    newTextPos[newSlot] = textPos[slot];
+	    newTextLen[newSlot] = textLen[slot];
+	    if (pruned.get(slot))
+		newPruned.set(newSlot);
+	    if (invisible.get(slot))
+		newInvisible.set(newSlot);
+	}
+	ids = newIds;
+	x = newX;
+	y = newY;
+	width = newWidth;
+	height = newHeight;
+	textPos = newTextPos;
+	textLen = newTextLen;
+	pruned.clear();
+	pruned.or(newPruned);
+	invisible.clear();
+	invisible.or(newInvisible);
+	used.clear();
+	used.set(0, newSlot);
+	freeSlot = newSlot;
+	rehash(newCapacity * 2);
+    }
+
+    /**
+     * The number of the slots in the arrays, for the tests.
+     */
+    int getCapacity()
+    {
+	return ids.length;
+    }
+
+    private void put(int id, int x, int y, int width, int height, int textPos, int textLen)
+    {
+	if (id < 0)
+	    throw new IllegalArgumentException("id (" + id + ") can't be negative");
+	int slot = findSlot(id);
+	if (slot >= 0)
+	    garbageLen += this.textLen[slot]; else
+	{
+	    slot = used.nextClearBit(freeSlot);
+	    freeSlot = slot + 1;
+	    ensureCapacity(slot + 1);
+	    //The key goes first, the rehashing inside takes only the slots already in use
+	    insertKey(id, slot);
+	    used.set(slot);
+	    ids[slot] = id;
+	}
+	this.x[slot] = x;
+	this.y[slot] = y;
+	this.width[slot] = width;
+	this.height[slot] = height;
+	this.textPos[slot] = textPos;
+	this.textLen[slot] = textLen;
+	pruned.clear(slot);
+	invisible.clear(slot);
+    }
+
+    /**
+     * Drops the texts of removed and rescanned nodes from the buffer, when
+     * they take more than a half of it.
+     */
+    private void compactIfNeeded()
+    {
+	if (garbageLen * 2 <= text.length())
+	    return;
+	final var newText = new StringBuilder(text.length() - garbageLen);
+	for(int slot = used.nextSetBit(0);slot >= 0;slot = used.nextSetBit(slot + 1))
+	{
+	    final int newPos = newText.length();
+	    newText.append(text, textPos[slot], textPos[slot] + textLen[slot]);
+	    textPos[slot] = newPos;
+	}
+	text.setLength(0);
+	text.append(newText);
+	garbageLen = 0;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+	if (capacity <= ids.length)
+	    return;
+	final int newCapacity = Math.max(capacity, ids.length * 2);
+	ids = Arrays.copyOf(ids, newCapacity);
+	x = Arrays.copyOf(x, newCapacity);
+	y = Arrays.copyOf(y, newCapacity);
+	width = Arrays.copyOf(width, newCapacity);
+	height = Arrays.copyOf(height, newCapacity);
+	textPos = Arrays.copyOf(textPos, newCapacity);
+	textLen = Arrays.copyOf(textLen, newCapacity);
+    }
+
+    /**
+     * Returns the slot of the identifier or -1, if the identifier isn't
+     * known.
+     */
+    private int findSlot(int id)
+    {
+	final int index = findKey(id);
+	return index >= 0?values[index]:-1;
+    }
+
+    private int findKey(int id)
+    {
+	if (id < 0)
+	    return -1;
+	final int mask = keys.length - 1;
+	for(int i = mix(id) & mask;;i = (i + 1) & mask)
+	{
+	    final int key = keys[i];
+	    if (key == id)
+		return i;
+	    if (key == EMPTY)
+		return -1;
+	}
+    }
+
+    private void insertKey(int id, int slot)
+    {
+	//The table is at most a half full, counting the deleted keys, so the probing always meets the empty key
+	if ((keyCount + deletedCount + 1) * 2 > keys.length)
+	    rehash(keyCount * 2 + 2 > keys.length / 2?keys.length * 2:keys.length);
+	final int mask = keys.length - 1;
+	int i = mix(id) & mask;
+	while(keys[i] >= 0)
+	    i = (i + 1) & mask;
+	if (keys[i] == DELETED)
+	    deletedCount--;
+	keys[i] = id;
+	values[i] = slot;
+	keyCount++;
+    }
+
+    private void rehash(int minLength)
+    {
+	int length = INITIAL_CAPACITY * 2;
+	while(length < minLength)
+	    length *= 2;
+	keys = newKeys(length);
+	values = new int[length];
+	keyCount = 0;
+	deletedCount = 0;
+	final int mask = length - 1;
+	for(int slot = used.nextSetBit(0);slot >= 0;slot = used.nextSetBit(slot + 1))
+	{
+	    int i = mix(ids[slot]) & mask;
+	    while(keys[i] != EMPTY)
+		i = (i + 1) & mask;
+	    keys[i] = ids[slot];
+	    values[i] = slot;
+	    keyCount++;
+	}
+    }
+
+    private int checkId(int id)
+    {
+	final int slot = findSlot(id);
+	if (slot < 0)
+	    throw new IllegalArgumentException("No geometry for the node with id " + id);
+	return slot;
+    }
+
+    private int checkSlot(int slot)
+    {
+	if (slot < 0 || !used.get(slot))
+	    throw new IllegalArgumentException("No node in the slot " + slot);
+	return slot;
+    }
+
+    static private int[] newKeys(int length)
+    {
+	final int[] res = new int[length];
+	Arrays.fill(res, EMPTY);
+	return res;
+    }
+
+    //The identifiers are consecutive, they are spread over the table to keep the probe sequences short
+    static private int mix(int id)
+    {
+	final int h = id * 0x9E3779B9;
+	return h ^ (h >>> 16);
+    }
+}
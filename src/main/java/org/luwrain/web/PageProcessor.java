@@ -0,0 +1,237 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+
+package org.luwrain.web;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.luwrain.core.NullCheck.*;
+import static org.luwrain.graphical.FxThread.*;
+import static org.luwrain.app.webinspector.App.log;
+
+/**
+ * Processes the loaded pages outside of the FX thread. The processing of
+ * the page is the pipeline of the stages: the scanning of the viewport and
+ * the copying of the DOM on the FX thread, the collecting of the blocks and
+ * their layout on the own thread of the processor, after that the scanning
+ * of the rest of the page on the FX thread and the collecting and the
+ * layout of all blocks on the own thread again. Every stage of the FX
+ * thread only takes the snapshot and returns, so the page and the other
+ * JavaFX work are never blocked by the layout.
+ * <p>
+ * Every processing gets the next generation of the page, the new page or
+ * the navigation makes all previous generations stale. The stale work is
+ * stopped cooperatively: the stages not started yet are skipped, the
+ * collecting stops before its next block, the layout stops before its next
+ * batch. The batches already given out may still be on their way to the UI
+ * thread, so the receivers check {@link Job#isCancelled()} once again
+ * before showing them.
+ */
+public final class PageProcessor
+{
+    /**
+     * The receiver of the blocks of the page.
+     */
+    public interface Listener
+    {
+	/**
+	 * Takes the next batch of the blocks. Called on the thread of the
+	 * processor, only while the job is current.
+	 *
+	 * @param job The processing the batch belongs to
+	 * @param batch The blocks of the batch
+	 * @param first True if the batch begins the blocks, all blocks received before must be dropped
+	 * @param last True if there will be no more batches
+	 */
+	void onBatch(Job job, List<WebKitBlock> batch, boolean first, boolean last);
+    }
+
+    /**
+     * The processing of one generation of the page.
+     */
+    public final class Job
+    {
+	private final long generation;
+	//The batch with the last flag is given out, nothing may follow it
+	private boolean finished = false;
+
+	private Job(long generation)
+	{
+	    this.generation = generation;
+	}
+
+	/**
+	 * Stops the processing of the page, if it is still current. May be
+	 * called on any thread.
+	 */
+	public void cancel()
+	{
+	    synchronized(PageProcessor.this) {
+		if (current == generation)
+		    current++;
+	    }
+	}
+
+	/**
+	 * Checks whether the job is cancelled or superseded by the newer one.
+	 * May be called on any thread.
+	 */
+	public boolean isCancelled()
+	{
+	    return generation != current;
+	}
+
+	/**
+	 * Checks whether the last batch of the job is given out.
+	 */
+	public synchronized boolean isFinished()
+	{
+	    return finished;
+	}
+
+	public long getGeneration()
+	{
+	    return generation;
+	}
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r->{
+	    final var t = new Thread(r, "web-page-processor");
+	    t.setDaemon(true);
+	    return t;
+	});
+    //The generation of the current job, every new job and every cancellation moves it forward
+    private volatile long current = 0;
+
+    /**
+     * Starts the processing of the page, making the previous one stale.
+     * Must be called on the FX thread, returns as soon as the first screens
+     * are copied. The batches of the first screens go to the listener with
+     * {@code last} set to false, after that the listener gets the batches
+     * of the whole page, beginning with the batch with {@code first} set to
+     * true. The batch with {@code last} set to true is always the final
+     * one, it is empty if the processing failed. If the first screens
+     * fail, the whole page isn't processed at all.
+     *
+     * @param blocks The blocks of the page to process
+     * @param desiredWidth The width of the area to show the blocks in
+     * @param margin The number of screens below the viewport to scan at once
+     * @param listener The receiver of the batches
+     * @return The processing of the page
+     */
+    public synchronized Job process(WebKitBlocks blocks, int desiredWidth, int margin, Listener listener)
+    {
+	notNull(blocks, "blocks");
+	notNull(listener, "listener");
+	if (desiredWidth <= 0)
+	    throw new IllegalArgumentException("desiredWidth (" + desiredWidth + ") must be a positive number");
+	ensure();
+	final var j = new Job(++current);
+	final DomSnapshot viewport;
+	try {
+	    viewport = blocks.scanViewport(margin, ()->onScanCompleted(j, blocks, desiredWidth, listener));
+	}
+	catch(Throwable e)
+	{
+	    log("Unable to scan the page: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+	    deliver(j, listener, new ArrayList<>(), false, true);
+	    return j;
+	}
+	submit(j, listener, ()->blocks.build(viewport, desiredWidth, (batch, first, last)->deliver(j, listener, batch, first, false), j::isCancelled));
+	return j;
+    }
+
+    /**
+     * Makes the current job stale, if any. Called on the navigation to
+     * another page.
+     */
+    public synchronized void cancel()
+    {
+	current++;
+    }
+
+    /**
+     * Cancels the current processing and stops the thread of the processor.
+     */
+    public synchronized void close()
+    {
+	cancel();
+	executor.shutdown();
+    }
+
+    private void onScanCompleted(Job j, WebKitBlocks blocks, int desiredWidth, Listener listener)
+    {
+	//The failed first screens have already finished the job, the whole page mustn't start it again
+	if (j.isCancelled() || j.isFinished())
+	    return;
+	final DomSnapshot snap;
+	try {
+	    snap = blocks.takeSnapshot();
+	}
+	catch(Throwable e)
+	{
+	    log("Unable to copy the page: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+	    deliver(j, listener, new ArrayList<>(), false, true);
+	    return;
+	}
+	submit(j, listener, ()->blocks.build(snap, desiredWidth, (batch, first, last)->deliver(j, listener, batch, first, last), j::isCancelled));
+    }
+
+    /**
+     * Gives the batch to the listener, if the job is still current and its
+     * last batch isn't given out yet. The batches come from the thread of
+     * the processor and, on the failures, from the FX thread, so the check
+     * and the delivery are made under the lock of the job.
+     */
+    private void deliver(Job j, Listener listener, List<WebKitBlock> batch, boolean first, boolean last)
+    {
+	synchronized(j) {
+	    if (j.isCancelled() || j.finished)
+		return;
+	    if (last)
+		j.finished = true;
+	    listener.onBatch(j, batch, first, last);
+	}
+    }
+
+    private void submit(Job j, Listener listener, Runnable stage)
+    {
+	try {
+	    executor.execute(()->{
+		    if (j.isCancelled() || j.isFinished())
+			return;
+		    try {
+			stage.run();
+		    }
+		    catch(CancellationException e)
+		    {
+			log("The processing of the page generation " + j.generation + " is cancelled");
+		    }
+		    catch(Throwable e)
+		    {
+			log("Unable to process the page: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+			deliver(j, listener, new ArrayList<>(), false, true);
+		    }
+		});
+	}
+	catch(RejectedExecutionException e)
+	{
+	    log("The page processor is closed");
+	}
+    }
+}
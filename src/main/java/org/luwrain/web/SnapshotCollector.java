@@ -0,0 +1,194 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import com.sun.webkit.dom.*;
+
+import static org.luwrain.core.NullCheck.*;
+
+/**
+ * Collects the blocks from the snapshot of the DOM, doesn't touch the DOM
+ * and may run on any thread. The subtrees of the large blocks are
+ * independent from the rest of the page: all the texts inside them go to
+ * them or to their descendants, so they are collected by the separate
+ * fork/join tasks and their blocks are inserted into the result at the
+ * position where the sequential traversal would save them.
+ */
+final class SnapshotCollector extends BlocksCollector<Integer, WebKitBlock>
+{
+    static final int
+	FORK_THRESHOLD = 512;
+
+    private final DomSnapshot snap;
+    private final DOMWindowImpl window;
+    private final LineBreaker breaker;
+    private final BooleanSupplier cancelled;
+    private final int root;
+    private final WebEvents.Collect event;
+    private final List<Fork> forks = new ArrayList<>();
+
+    private SnapshotCollector(DomSnapshot snap, DOMWindowImpl window, LineBreaker breaker, BooleanSupplier cancelled, int root, WebEvents.Collect event)
+    {
+	this.snap = snap;
+	this.window = window;
+	this.breaker = breaker;
+	this.cancelled = cancelled;
+	this.root = root;
+	this.event = event;
+    }
+
+    /**
+     * Collects the blocks of the whole snapshot in the common fork/join
+     * pool. The calling thread waits for the result.
+     *
+     * @param breaker The rule of breaking the texts of the runs into the lines
+     * @param cancelled The check of the cancellation, made before every new block by all tasks
+     * @throws CancellationException if the collecting was cancelled
+     */
+    static List<WebKitBlock> collect(DomSnapshot snap, DOMWindowImpl window, LineBreaker breaker, BooleanSupplier cancelled)
+    {
+	notNull(snap, "snap");
+	notNull(window, "window");
+	notNull(breaker, "breaker");
+	notNull(cancelled, "cancelled");
+	if (snap.size() == 0)
+	    return new ArrayList<>();
+	//The single event for the whole snapshot, all tasks add their counters to it
+	final var event = new WebEvents.Collect();
+	event.begin();
+	final var res = ForkJoinPool.commonPool().invoke(new Task(snap, window, breaker, cancelled, 0, event.isEnabled()?event:null));
+	event.commit();
+	return res;
+    }
+
+    @Override public List<Integer> getChildNodes(Integer node)
+    {
+	final var res = new ArrayList<Integer>();
+	for(int i = snap.getFirstChild(node.intValue());i >= 0;i = snap.getNextSibling(i))
+	    res.add(Integer.valueOf(i));
+	return res;
+    }
+
+    @Override public Integer getFirstChild(Integer node)
+    {
+	final int res = snap.getFirstChild(node.intValue());
+	return res >= 0?Integer.valueOf(res):null;
+    }
+
+    @Override public Integer getNextSibling(Integer node)
+    {
+	final int res = snap.getNextSibling(node.intValue());
+	return res >= 0?Integer.valueOf(res):null;
+    }
+
+    @Override public boolean isMarkupNode(Integer node) { return snap.getKind(node.intValue()) == DomSnapshot.INLINE; }
+    @Override public boolean isTextNode(Integer node) { return snap.getKind(node.intValue()) == DomSnapshot.TEXT; }
+
+    @Override public boolean isPrunedNode(Integer node)
+    {
+	return snap.getKind(node.intValue()) == DomSnapshot.PRUNED;
+    }
+
+    /**
+     * Gives the large blocks to the separate tasks. Every large block met
+     * here is the outermost one below the root, since the collector never
+     * enters the subtrees of the forked blocks.
+     */
+    @Override public boolean isForkedNode(Integer node)
+    {
+	final int index = node.intValue();
+	if (index == root || snap.getKind(index) != DomSnapshot.BLOCK || snap.getEnd(index) - index < FORK_THRESHOLD)
+	    return false;
+	final var task = new Task(snap, window, breaker, cancelled, index, event);
+	task.fork();
+	forks.add(new Fork(blocks.size(), task));
+	return true;
+    }
+
+    @Override public void addTextToBlock(Integer node, WebKitBlock block)
+    {
+	block.runs.add(new WebKitBlock.Run(snap.getText(node.intValue()), breaker));
+    }
+
+    @Override public WebKitBlock createBlock(Integer node)
+    {
+	if (cancelled.getAsBoolean())
+	    throw new CancellationException();
+	return new WebKitBlock(window, snap, node.intValue());
+    }
+
+    @Override public boolean saveBlock(WebKitBlock block)
+    {
+	return block.hasText();
+    }
+
+    static private final class Fork
+    {
+	final int pos;
+	final Task task;
+	Fork(int pos, Task task)
+	{
+	    this.pos = pos;
+	    this.task = task;
+	}
+    }
+
+    static private final class Task extends RecursiveTask<List<WebKitBlock>>
+    {
+	private final DomSnapshot snap;
+	private final DOMWindowImpl window;
+	private final LineBreaker breaker;
+	private final BooleanSupplier cancelled;
+	private final int root;
+	//The event of the recording or null, if the recording is off
+	private final WebEvents.Collect event;
+	Task(DomSnapshot snap, DOMWindowImpl window, LineBreaker breaker, BooleanSupplier cancelled, int root, WebEvents.Collect event)
+	{
+	    this.snap = snap;
+	    this.window = window;
+	    this.breaker = breaker;
+	    this.cancelled = cancelled;
+	    this.root = root;
+	    this.event = event;
+	}
+	@Override protected List<WebKitBlock> compute()
+	{
+	    final var c = new SnapshotCollector(snap, window, breaker, cancelled, root, event);
+	    c.process(Integer.valueOf(root));
+	    if (event != null)
+		synchronized(event) {
+		    c.addCounters(event);
+		}
+	    if (c.forks.isEmpty())
+		return c.blocks;
+	    final var res = new ArrayList<WebKitBlock>();
+	    int pos = 0;
+	    for(var f: c.forks)
+	    {
+		res.addAll(c.blocks.subList(pos, f.pos));
+		res.addAll(f.task.join());
+		pos = f.pos;
+	    }
+	    res.addAll(c.blocks.subList(pos, c.blocks.size()));
+	    return res;
+	}
+    }
+}
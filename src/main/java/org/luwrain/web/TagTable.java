@@ -0,0 +1,121 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.io.*;
+import java.util.*;
+
+import static org.luwrain.core.NullCheck.*;
+
+/**
+ * The classification of the HTML tags for the collecting of the blocks. The
+ * default table is loaded from the {@code tags.properties} resource, the
+ * user may override the classes of any tags with the string of the form
+ * {@code TAG=CLASS,TAG=CLASS}. The tags are compared in the upper case.
+ */
+public final class TagTable
+{
+    static private final String
+	RESOURCE_NAME = "tags.properties";
+
+    public enum Kind {INLINE, BLOCK, SKIP};
+
+    static private TagTable defaultTable = null;
+
+    private final Map<String, Kind> kinds;
+
+    TagTable(Map<String, Kind> kinds)
+    {
+	notNull(kinds, "kinds");
+	this.kinds = kinds;
+    }
+
+    /**
+     * Looks up the class of the tag.
+     *
+     * @return The class of the tag or null, if the tag is unknown
+     */
+    public Kind get(String tagName)
+    {
+	notNull(tagName, "tagName");
+	final Kind res = kinds.get(tagName);
+	if (res != null)
+	    return res;
+	return kinds.get(tagName.toUpperCase(Locale.ROOT));
+    }
+
+    public int size()
+    {
+	return kinds.size();
+    }
+
+    /**
+     * Makes the table with the default classes replaced by the given ones.
+     *
+     * @param overrides The classes of the tags in the form {@code TAG=CLASS,TAG=CLASS}, may be empty
+     * @throws IllegalArgumentException if the string of the overrides is malformed
+     */
+    static public TagTable create(String overrides)
+    {
+	notNull(overrides, "overrides");
+	if (overrides.trim().isEmpty())
+	    return getDefault();
+	final var kinds = new HashMap<String, Kind>(getDefault().kinds);
+	for(var item: overrides.split("[,;]", -1))
+	{
+	    if (item.trim().isEmpty())
+		continue;
+	    final int pos = item.indexOf('=');
+	    if (pos < 0)
+		throw new IllegalArgumentException("No '=' in the tag class '" + item.trim() + "'");
+	    kinds.put(item.substring(0, pos).trim().toUpperCase(Locale.ROOT), parseKind(item.substring(pos + 1)));
+	}
+	return new TagTable(kinds);
+    }
+
+    static public synchronized TagTable getDefault()
+    {
+	if (defaultTable != null)
+	    return defaultTable;
+	final var props = new Properties();
+	try (final var is = TagTable.class.getResourceAsStream(RESOURCE_NAME)) {
+	    if (is == null)
+		throw new IllegalStateException("No resource " + RESOURCE_NAME);
+	    props.load(new InputStreamReader(is, "UTF-8"));
+	}
+	catch(IOException e)
+	{
+	    throw new RuntimeException(e);
+	}
+	final var kinds = new HashMap<String, Kind>();
+	for(var name: props.stringPropertyNames())
+	    kinds.put(name.toUpperCase(Locale.ROOT), parseKind(props.getProperty(name)));
+	defaultTable = new TagTable(kinds);
+	return defaultTable;
+    }
+
+    static private Kind parseKind(String value)
+    {
+	try {
+	    return Kind.valueOf(value.trim().toUpperCase(Locale.ROOT));
+	}
+	catch(IllegalArgumentException e)
+	{
+	    throw new IllegalArgumentException("Unknown tag class '" + value.trim() + "', must be INLINE, BLOCK or SKIP");
+	}
+    }
+}
@@ -0,0 +1,110 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import static org.luwrain.core.NullCheck.*;
+
+/**
+ * The storage of all texts of one page. The texts are copied into the
+ * large shared chunks of characters and are given out as the views, which
+ * don't copy the characters once again, even on taking their
+ * subsequences. The chunks are never reallocated, so the views stay valid
+ * as long as they are referenced. The arena is filled on one thread and
+ * may be read on any thread after that.
+ */
+public final class TextArena
+{
+    static private final int
+	CHUNK_SIZE = 65536,
+	MAX_SHARED_LEN = CHUNK_SIZE / 4;
+    static private final char[] EMPTY = new char[0];
+
+    private char[] chunk = null;
+    private int used = 0;
+    private long length = 0;
+
+    /**
+     * Copies the text into the arena.
+     *
+     * @return The view of the copied text
+     */
+    public CharSequence add(String text)
+    {
+	notNull(text, "text");
+	final int len = text.length();
+	if (len == 0)
+	    return new Slice(EMPTY, 0, 0);
+	length += len;
+	//The long texts take their own arrays, so they don't leave the large unused tails of the chunks
+	if (len > MAX_SHARED_LEN)
+	    return new Slice(text.toCharArray(), 0, len);
+	if (chunk == null || used + len > chunk.length)
+	{
+	    chunk = new char[CHUNK_SIZE];
+	    used = 0;
+	}
+	text.getChars(0, len, chunk, used);
+	final var res = new Slice(chunk, used, len);
+	used += len;
+	return res;
+    }
+
+    /**
+     * The total number of the characters stored in the arena.
+     */
+    public long getLength()
+    {
+	return length;
+    }
+
+    static final class Slice implements CharSequence
+    {
+	private final char[] chars;
+	private final int offset, length;
+
+	Slice(char[] chars, int offset, int length)
+	{
+	    this.chars = chars;
+	    this.offset = offset;
+	    this.length = length;
+	}
+
+	@Override public int length()
+	{
+	    return length;
+	}
+
+	@Override public char charAt(int index)
+	{
+	    if (index < 0 || index >= length)
+		throw new IndexOutOfBoundsException("index (" + index + ") must be non-negative and less than " + length);
+	    return chars[offset + index];
+	}
+
+	@Override public CharSequence subSequence(int start, int end)
+	{
+	    if (start < 0 || end > length || start > end)
+		throw new IndexOutOfBoundsException("Illegal range from " + start + " to " + end + " with the length " + length);
+	    return new Slice(chars, offset + start, end - start);
+	}
+
+	@Override public String toString()
+	{
+	    return new String(chars, offset, length);
+	}
+    }
+}
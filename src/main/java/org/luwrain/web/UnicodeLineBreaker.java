@@ -0,0 +1,129 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.text.*;
+import java.util.*;
+
+/**
+ * Breaks the text by the Unicode line breaking rules with {@link
+ * BreakIterator}, so the CJK texts, the hyphenated words and the like get
+ * their breaks without the spaces. The iterators aren't thread-safe and
+ * are expensive to create, so every thread keeps its own iterator for every
+ * locale. The iterator reads the text through the {@link CharacterIterator}
+ * view, the texts of the arena aren't copied.
+ */
+final class UnicodeLineBreaker implements LineBreaker
+{
+    static private final ThreadLocal<Map<Locale, BreakIterator>> iterators = ThreadLocal.withInitial(HashMap::new);
+
+    private final Locale locale;
+
+    UnicodeLineBreaker(Locale locale)
+    {
+	this.locale = locale;
+    }
+
+    @Override public int[] getBreaks(CharSequence text)
+    {
+	final int len = text.length();
+	if (len < 2)
+	    return new int[0];
+	final BreakIterator it = iterators.get().computeIfAbsent(locale, BreakIterator::getLineInstance);
+	it.setText(new CharSequenceIterator(text));
+	try {
+	    int[] res = new int[Math.max(len / 4, 4)];
+	    int count = 0;
+	    for(int pos = it.next();pos != BreakIterator.DONE && pos < len;pos = it.next())
+	    {
+		if (count == res.length)
+		    res = Arrays.copyOf(res, res.length * 2);
+		res[count++] = pos;
+	    }
+	    return count == res.length?res:Arrays.copyOf(res, count);
+	}
+	finally {
+	    //The iterator mustn't keep the chunk of the arena after the page is gone
+	    it.setText("");
+	}
+    }
+
+    /**
+     * The view of the character sequence for {@link BreakIterator}.
+     */
+    static final class CharSequenceIterator implements CharacterIterator
+    {
+	private final CharSequence text;
+	private int pos = 0;
+
+	CharSequenceIterator(CharSequence text)
+	{
+	    this.text = text;
+	}
+
+	@Override public char first()
+	{
+	    pos = 0;
+	    return current();
+	}
+
+	@Override public char last()
+	{
+	    pos = text.length() > 0?text.length() - 1:0;
+	    return current();
+	}
+
+	@Override public char current()
+	{
+	    return pos < text.length()?text.charAt(pos):DONE;
+	}
+
+	@Override public char next()
+	{
+	    if (pos < text.length())
+		pos++;
+	    return current();
+	}
+
+	@Override public char previous()
+	{
+	    if (pos == 0)
+		return DONE;
+	    pos--;
+	    return current();
+	}
+
+	@Override public char setIndex(int position)
+	{
+	    if (position < 0 || position > text.length())
+		throw new IllegalArgumentException("position (" + position + ") must be between 0 and " + text.length());
+	    pos = position;
+	    return current();
+	}
+
+	@Override public int getBeginIndex() { return 0; }
+	@Override public int getEndIndex() { return text.length(); }
+	@Override public int getIndex() { return pos; }
+
+	@Override public Object clone()
+	{
+	    final var res = new CharSequenceIterator(text);
+	    res.pos = pos;
+	    return res;
+	}
+    }
+}
@@ -0,0 +1,171 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.concurrent.*;
+
+import static org.luwrain.core.NullCheck.*;
+import static org.luwrain.app.webinspector.App.log;
+
+/**
+ * Coalesces the modifications of the page into the rare updates. The
+ * update starts when the page has been quiet for the given period, but
+ * no later than the maximum staleness after the first modification not
+ * reflected yet, so the constantly changing pages are updated as well.
+ * The modified subtrees recorded during the window are merged and
+ * rescanned by the single update. The updates run one by one on the own
+ * thread of the scheduler, the modifications arriving during an update go
+ * to the next one.
+ */
+public final class UpdateScheduler
+{
+    static public final long
+	DEFAULT_QUIET_PERIOD = 300,
+	DEFAULT_MAX_STALENESS = 2000;
+
+    /**
+     * The update of the page, run on the thread of the scheduler.
+     */
+    public interface Update
+    {
+	/**
+	 * Brings the blocks of the page up to date.
+	 *
+	 * @param mutationCount The number of the mutation records coalesced into this update
+	 */
+	void update(int mutationCount) throws Exception;
+    }
+
+    private final long quietPeriod, maxStaleness;
+    private final Update update;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> timer = null;
+    private int pendingCount = 0;
+    private long firstPendingTime = 0, lastPendingTime = 0;
+    private int updateCount = 0;
+    private long coalescedCount = 0;
+    private boolean closed = false;
+
+    /**
+     * @param quietPeriod The time without modifications before the update, in milliseconds
+     * @param maxStaleness The maximum time from the first modification to the update, in milliseconds
+     * @param update The update to run
+     */
+    public UpdateScheduler(long quietPeriod, long maxStaleness, Update update)
+    {
+	notNull(update, "update");
+	if (quietPeriod <= 0)
+	    throw new IllegalArgumentException("quietPeriod (" + quietPeriod + ") must be a positive number");
+	if (maxStaleness < quietPeriod)
+	    throw new IllegalArgumentException("maxStaleness (" + maxStaleness + ") may not be less than quietPeriod (" + quietPeriod + ")");
+	this.quietPeriod = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+	this.maxStaleness = TimeUnit.MILLISECONDS.toNanos(maxStaleness);
+	this.update = update;
+	this.executor = Executors.newSingleThreadScheduledExecutor(r->{
+		final var t = new Thread(r, "web-updates");
+		t.setDaemon(true);
+		return t;
+	    });
+    }
+
+    /**
+     * Records the modifications of the page. Returns immediately, may be
+     * called on any thread.
+     *
+     * @param count The number of the mutation records
+     */
+    public synchronized void onMutations(int count)
+    {
+	if (closed || count <= 0)
+	    return;
+	final long now = System.nanoTime();
+	if (pendingCount == 0)
+	    firstPendingTime = now;
+	lastPendingTime = now;
+	pendingCount += count;
+	//The timer isn't moved on every modification, it checks the time of the last one on firing
+	if (timer == null)
+	    schedule(now);
+    }
+
+    /**
+     * Stops the updates. The running update, if any, is completed.
+     */
+    public synchronized void close()
+    {
+	closed = true;
+	if (timer != null)
+	    timer.cancel(false);
+	timer = null;
+	executor.shutdown();
+    }
+
+    /**
+     * The number of the updates performed.
+     */
+    public synchronized int getUpdateCount()
+    {
+	return updateCount;
+    }
+
+    /**
+     * The number of the mutation records reflected by the performed updates.
+     */
+    public synchronized long getCoalescedCount()
+    {
+	return coalescedCount;
+    }
+
+    private void schedule(long now)
+    {
+	final long deadline = Math.min(lastPendingTime + quietPeriod, firstPendingTime + maxStaleness);
+	timer = executor.schedule(this::onTimer, Math.max(deadline - now, 0), TimeUnit.NANOSECONDS);
+    }
+
+    private void onTimer()
+    {
+	final int count;
+	synchronized(this) {
+	    timer = null;
+	    if (closed || pendingCount == 0)
+		return;
+	    final long now = System.nanoTime();
+	    if (now - lastPendingTime < quietPeriod && now - firstPendingTime < maxStaleness)
+	    {
+		schedule(now);
+		return;
+	    }
+	    count = pendingCount;
+	    pendingCount = 0;
+	}
+	log("Updating the page after " + count + " mutations");
+	try {
+	    update.update(count);
+	}
+	catch(Throwable e)
+	{
+	    log("Unable to update the page: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+	}
+	synchronized(this) {
+	    updateCount++;
+	    coalescedCount += count;
+	    //The modifications made during the update were waiting for it
+	    if (!closed && pendingCount > 0 && timer == null)
+		schedule(System.nanoTime());
+	}
+    }
+}
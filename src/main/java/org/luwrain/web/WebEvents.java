@@ -0,0 +1,140 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+
+package org.luwrain.web;
+
+import java.lang.management.*;
+
+import jdk.jfr.*;
+
+/**
+ * The events of JDK Flight Recorder emitted by the stages of the page
+ * processing. The events cost nothing while the recording is off: the
+ * counters are gathered only if {@code isEnabled()} of the event returns
+ * true. The recording is started as usual, for example with {@code
+ * -XX:StartFlightRecording} or {@code jcmd <pid> JFR.start}, the events are
+ * in the category "LUWRAIN / Web". The showing of the blocks is recorded by
+ * {@code BlockArea} in the same category.
+ */
+public final class WebEvents
+{
+    static private final String
+	PREFIX = "org.luwrain.web.";
+
+    private WebEvents()
+    {
+    }
+
+    @Name(PREFIX + "GeomScan")
+    @Label("Geometry Scan")
+    @Category({"LUWRAIN", "Web"})
+    @Description("The scanning of the geometry of the page by the injection")
+    @StackTrace(false)
+    static public final class GeomScan extends Event
+    {
+	@Label("Kind")
+	@Description("full, viewport, background or rescan")
+	public String kind;
+
+	@Label("Nodes")
+	@Description("The number of the nodes scanned")
+	public int nodeCount;
+
+	@Label("DOM Time")
+	@Description("The time of the scanning reported by the injection")
+	@Timespan(Timespan.MILLISECONDS)
+	public long domTime;
+    }
+
+    @Name(PREFIX + "Collect")
+    @Label("Blocks Collecting")
+    @Category({"LUWRAIN", "Web"})
+    @Description("The collecting of the blocks of one snapshot, summed over all its parallel tasks")
+    @StackTrace(false)
+    static public final class Collect extends Event
+    {
+	@Label("Nodes Walked")
+	public int nodeCount;
+
+	@Label("Blocks Created")
+	public int createdCount;
+
+	@Label("Blocks Saved")
+	public int savedCount;
+
+	@Label("Pruned Subtrees")
+	@Description("The subtrees skipped as invisible")
+	public int prunedCount;
+
+	@Label("Forked Subtrees")
+	@Description("The subtrees collected by the separate parallel tasks")
+	public int forkedCount;
+    }
+
+    @Name(PREFIX + "Layout")
+    @Label("Blocks Layout")
+    @Category({"LUWRAIN", "Web"})
+    @Description("The layout of the collected blocks for one width")
+    @StackTrace(false)
+    static public final class Layout extends Event
+    {
+	@Label("Width")
+	public int width;
+
+	@Label("Cached")
+	@Description("The layout was taken from the cache")
+	public boolean cached;
+
+	@Label("Blocks")
+	public int blockCount;
+
+	@Label("Lines")
+	public int lineCount;
+
+	@Label("Rescale Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long rescaleTime;
+
+	@Label("Lines Time")
+	@Description("The total time of building the lines of all batches")
+	@Timespan(Timespan.NANOSECONDS)
+	public long buildLinesTime;
+
+	@Label("Positions Time")
+	@Description("The total time of placing the blocks of all batches by BlockGeom")
+	@Timespan(Timespan.NANOSECONDS)
+	public long blockGeomTime;
+
+	@Label("Allocated")
+	@Description("The memory allocated by the laying out thread, the lines built in parallel by the other threads aren't counted")
+	@DataAmount
+	public long allocated;
+    }
+
+    /**
+     * Returns the number of the bytes allocated by the current thread, if
+     * the JVM can count them.
+     *
+     * @return The number of the bytes or -1, if the counting isn't supported
+     */
+    static long getAllocatedBytes()
+    {
+	if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) || !bean.isThreadAllocatedMemoryEnabled())
+	    return -1;
+	return bean.getCurrentThreadAllocatedBytes();
+    }
+}
@@ -29,7 +29,7 @@ import static java.lang.Character.*;
 
 public final class WebKitBlock extends WebKitBlockBase
 {
-static private final int
+static final int
     MIN_BLOCK_WIDTH = 5;
 
     public final String className, tagName;
@@ -37,7 +37,8 @@ static private final int
         public final boolean visible;
     final NodeImpl node;
         final DOMWindowImpl window;
-    public String text = null;
+    //The index of the node in the snapshot of the whole page, -1 if the block wasn't collected from it
+    int snapIndex = -1;
 
 
 
@@ -74,16 +75,77 @@ static private final int
 	this.visible = (this.right - this.left) > 0;
     }
 
+    /**
+     * Creates the block from the snapshot of the page. The DOM isn't
+     * touched, so the block may be created on any thread.
+     */
+    WebKitBlock(DOMWindowImpl window, DomSnapshot snap, int index)
+    {
+	notNull(window, "window");
+	notNull(snap, "snap");
+	this.window = window;
+	this.node = snap.getNode(index);
+	this.snapIndex = index;
+	this.className = node.getClass().getSimpleName();
+	this.tagName = (node instanceof HTMLElementImpl)?snap.getTagName(index):null;
+	if (snap.hasGeom(index))
+	{
+	    this.srcLeft = snap.getX(index);
+	    this.srcRight = snap.getX(index) + snap.getWidth(index);
+	    this.srcTop = snap.getY(index);
+	    this.srcBottom = snap.getY(index) + snap.getHeight(index);
+	} else
+	{
+	    this.srcLeft = 0;
+	    this.srcRight = 0;
+	    this.srcTop = 0;
+	    this.srcBottom = 0;
+	}
+	this.left = this.srcLeft;
+	this.right = this.srcRight;
+	this.top = this.srcTop;
+	this.visible = (this.right - this.left) > 0;
+    }
+
+    /**
+     * Makes the copy of the block for the layout of another width. The runs
+     * with their tables of the breaks are shared, the position is taken
+     * from the source geometry again, the lines must be built for it.
+     */
+    WebKitBlock(WebKitBlock block)
+    {
+	notNull(block, "block");
+	this.window = block.window;
+	this.node = block.node;
+	this.className = block.className;
+	this.tagName = block.tagName;
+	this.srcLeft = block.srcLeft;
+	this.srcRight = block.srcRight;
+	this.srcTop = block.srcTop;
+	this.srcBottom = block.srcBottom;
+	this.left = this.srcLeft;
+	this.right = this.srcRight;
+	this.top = this.srcTop;
+	this.visible = block.visible;
+	this.snapIndex = block.snapIndex;
+	this.runs.addAll(block.runs);
+    }
+
     public boolean isVisible()
     {
 	return this.visible;
     }
 
-    void rescale(float scale)
+    /**
+     * Returns the identifier of the node in the page geometry. Must be
+     * called on the FX thread.
+     *
+     * @return The identifier or -1, if the node wasn't scanned
+     */
+    public int getGeomId()
     {
-	left = Float.valueOf(scale * left).intValue();
-	right = Math.max(Float.valueOf(scale * right).intValue(), left + MIN_BLOCK_WIDTH );
-				top = Float.valueOf(scale * top).intValue();
+	ensure();
+	return PageGeometry.getId(node);
     }
 
         public String getStyle()
@@ -31,91 +31,199 @@ import static org.luwrain.core.Log.*;
 
 public class WebKitBlockBase extends BlockGeom.Block
 {
-    public String text = null;
+    static final int
+	PARALLEL_THRESHOLD = 256;
+
     public final List<Run> runs = new ArrayList<>();
     public final List<Line> lines = new ArrayList<>();
+    private int[] runStarts = new int[]{0};
+    private long[] lineBounds = new long[0];
 
-    void buildLines()
+    /**
+     * Makes the string with the texts of all runs of the block.
+     */
+    public String getText()
     {
+	final var b = new StringBuilder();
 	for(var r: runs)
-	this.lines.clear();
+	    b.append(r.text);
+	return new String(b);
+    }
+
+    /**
+     * Checks that the runs of the block contain anything except the spaces
+     * and the control characters, without making the string of the text.
+     */
+    public boolean hasText()
+    {
+	for(var r: runs)
+	{
+	    final int len = r.text.length();
+	    for(int i = 0;i < len;i++)
+		if (r.text.charAt(i) > ' ')
+		    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Builds the lines of the blocks, in parallel if there are at least
+     * {@code PARALLEL_THRESHOLD} of them. The only state the blocks may
+     * share is the runs of the layouts of the different widths, their
+     * tables of the breaks don't depend on the width.
+     */
+    static void buildLines(List<? extends WebKitBlockBase> blocks)
+    {
+	if (blocks.size() < PARALLEL_THRESHOLD)
+	    blocks.forEach(WebKitBlockBase::buildLines); else
+	    blocks.parallelStream().forEach(WebKitBlockBase::buildLines);
+    }
+
+    /**
+     * Wraps the text of the runs into the lines of the width of the block.
+     * The lines are calculated as the packed pairs of the offsets in the
+     * text of the block, so the number of the objects made here depends
+     * only on the number of the lines. Everything is calculated before the
+     * state of the block is changed, the block without the width gets no
+     * lines at all.
+     */
+    void buildLines()
+    {
 	final int availableWidth = this.right - this.left;
-	if (availableWidth <= 0)
-	    throw new IllegalStateException("The width of the block is equal to zero");
+	final int[] runStarts = new int[runs.size() + 1];
+	for(int i = 0;i < runs.size();i++)
+	    runStarts[i + 1] = runStarts[i] + runs.get(i).text.length();
+	final long[] lineBounds = availableWidth > 0?breakLines(runStarts, availableWidth):new long[0];
+	final var newLines = new Line[lineBounds.length];
+	for(int i = 0;i < lineBounds.length;i++)
+	    newLines[i] = new Line(this, getLineStart(lineBounds[i]), getLineEnd(lineBounds[i]));
+	this.runStarts = runStarts;
+	this.lineBounds = lineBounds;
+	this.lines.clear();
+	this.lines.addAll(Arrays.asList(newLines));
+	this.height = lines.size();
+    }
+
+    private long[] breakLines(int[] runStarts, int availableWidth)
+    {
+	long[] res = new long[Math.max(runStarts[runs.size()] / availableWidth + 1, 4)];
+	int count = 0;
 	int spaceLeft = availableWidth;
-	final var fragments = new ArrayList<Fragment>();
-	for(final var r: runs)
+	//The offset of the beginning of the current line or -1, if the current line is empty
+	int lineStart = -1;
+	for(int runIndex = 0;runIndex < runs.size();runIndex++)
 	{
+	    final Run r = runs.get(runIndex);
+	    final int base = runStarts[runIndex];
 	    final int len = r.text.length();
-	    final var breaks = r.getBreaks();
+	    final int[] breaks = r.getBreaks();
 	    int continueFrom = 0;
 	    while(continueFrom < len)
 	    {
+		if (count + 1 >= res.length)
+		    res = Arrays.copyOf(res, res.length * 2);
 		//No space left at all, we need to create new line
 		if (spaceLeft == 0)
 		{
-				    this.lines.add(new Line(fragments));
-		    fragments.clear();
+		    res[count++] = packLine(lineStart, base + continueFrom);
+		    lineStart = -1;
 		    spaceLeft = availableWidth;
 		    continue;
-	    }
+		}
 		//No need to break the run any more, we have the room for the entire remaining part
 		if (len - continueFrom <= spaceLeft)
 		{
-		    fragments.add(new Fragment(r, continueFrom, len));
+		    if (lineStart < 0)
+			lineStart = base + continueFrom;
 		    spaceLeft -= len - continueFrom;
 		    continueFrom = len;
 		    continue;
 		}
 		if (breaks.length == 0)
 		{
-		    fragments.add(new Fragment(r, continueFrom, continueFrom + spaceLeft));
-		    		    continueFrom += spaceLeft;
+		    if (lineStart < 0)
+			lineStart = base + continueFrom;
+		    continueFrom += spaceLeft;
 		    spaceLeft = 0;
 		    continue;
 		}
-		int newBreak = findNextBreak(breaks, continueFrom, len, spaceLeft);
+		final int newBreak = findNextBreak(breaks, continueFrom, len, spaceLeft);
 		//No room for breaking even on the closest break
 		if (newBreak < 0)
 		{
 		    if (spaceLeft == availableWidth)
 		    {
-			if (!fragments.isEmpty())
-			    throw new IllegalStateException("having fragments without consumed space");
-			lines.add(new Line(Arrays.asList(new Fragment(r, continueFrom, continueFrom + spaceLeft))));
+			//Nothing is consumed, the line must be empty
+			assert lineStart < 0;
+			res[count++] = packLine(base + continueFrom, base + continueFrom + spaceLeft);
 			continueFrom += spaceLeft;
 			continue;
 		    }
-		    this.lines.add(new Line(fragments));
-		    fragments.clear();
+		    res[count++] = packLine(lineStart, base + continueFrom);
+		    lineStart = -1;
 		    spaceLeft = availableWidth;
 		    continue;
 		}
-		//		stop();
-		fragments.add(new Fragment(r, continueFrom, newBreak));
+		if (lineStart < 0)
+		    lineStart = base + continueFrom;
 		spaceLeft -= newBreak - continueFrom;
 		continueFrom = newBreak;
 	    }
 	}
-	if (!fragments.isEmpty())
-	    lines.add(new Line(fragments));
-	this.height = lines.size();
+	if (lineStart >= 0)
+	{
+	    if (count == res.length)
+		res = Arrays.copyOf(res, count + 1);
+	    res[count++] = packLine(lineStart, runStarts[runs.size()]);
+	}
+	return count == res.length?res:Arrays.copyOf(res, count);
+    }
+
+    /**
+     * Finds the farthest break which fits into the available space. The
+     * breaks up to the one at {@code continueFrom} or the first one, if
+     * there are no such, are never chosen.
+     *
+     * @return The position of the break or -1, if there is no suitable break
+     */
+    int findNextBreak(int[] breaks, int continueFrom, int wholeLen, int availableSpace)
+    {
+	//The closest break on the left of continueFrom or at the same position
+	final int left = Math.max(upperBound(breaks, continueFrom) - 1, 0);
+	//The farthest break fitting into the available space
+	final int right = upperBound(breaks, continueFrom + availableSpace) - 1;
+	return right > left?breaks[right]:-1;
     }
 
-    int findNextBreak(int[]   breaks, int continueFrom, int wholeLen, int availableSpace)
+    /**
+     * Finds the index of the first item greater than the value in the sorted array.
+     */
+    static int upperBound(int[] items, int value)
     {
-	//	if (wholeLen - continueFrom <= availableSpace)
-	//	    return -1;
-	int left;
-	//Searching the closest break to continueWith located on the left (there are no breaks more to continueWith).
-	//If continueWith has the same location as one of the breaks, we have to choose the corresponding break.
-	for(left = 0;left + 1 < breaks.length && breaks[left + 1] <= continueFrom;left++);
-	int right = breaks.length - 1;
-	while(right > left && breaks[right] - continueFrom > availableSpace)
-	      right--;
-	      return right > left?breaks[right]:-1;
+	int from = 0, to = items.length;
+	while(from < to)
+	{
+	    final int mid = (from + to) >>> 1;
+	    if (items[mid] <= value)
+		from = mid + 1; else
+		to = mid;
+	}
+	return from;
+    }
+
+    /**
+     * Returns the lines as the packed pairs of the offsets in the text of the
+     * block: the beginning in the high 32 bits and the end in the low ones.
+     */
+    public long[] getLineBounds()
+    {
+	return lineBounds;
     }
 
+    static long packLine(int start, int end) { return ((long)start << 32) | (end & 0xffffffffL); }
+    static public int getLineStart(long bounds) { return (int)(bounds >>> 32); }
+    static public int getLineEnd(long bounds) { return (int)bounds; }
+
     public int getLeft() { return left; }
     public int getRight() { return right; }
     public int getWidth() { return right - left; }
@@ -125,29 +233,37 @@ public class WebKitBlockBase extends BlockGeom.Block
 
     static public final class Run
     {
-	public final String text;
-	Run(String text)
+	public final CharSequence text;
+	private final LineBreaker breaker;
+	//The run may be shared by the layouts of the different widths, built on the different threads
+	private volatile int[] breaks = null;
+	Run(CharSequence text)
+	{
+	    this(text, LineBreaker.WHITESPACE);
+	}
+	Run(CharSequence text, LineBreaker breaker)
 	{
 	    notNull(text, "text");
+	    notNull(breaker, "breaker");
 	    this.text = text;
+	    this.breaker = breaker;
 	}
+	/**
+	 * Returns the positions where the lines may begin. The table is
+	 * calculated once and is kept with the run.
+	 */
 	int[] getBreaks()
 	{
-	    final var res = new ArrayList<Integer>();
-	    for(int i = 1;i < text.length();i++)
-	    {
-		final char ch = text.charAt(i), prevCh = text.charAt(i - 1);
-		if (!isSpace(ch) && isSpace(prevCh))
-		    res.add(Integer.valueOf(i));
-	    }
-	    final int[] intRes = new int[res.size()];
-	    for(int i = 0;i < intRes.length;i++)
-		intRes[i] = res.get(i).intValue();
-	    return intRes;
-    }
+	    final int[] breaks = this.breaks;
+	    if (breaks != null)
+		return breaks;
+	    final int[] res = breaker.getBreaks(text);
+	    this.breaks = res;
+	    return res;
+	}
 	@Override public String toString()
 	{
-	    return text;
+	    return text.toString();
 	}
     }
 
@@ -168,28 +284,59 @@ public class WebKitBlockBase extends BlockGeom.Block
 		this.fromPos = fromPos;
 		this.toPos = toPos;
 	    }
-	    public String text()
+	    /**
+	     * Returns the text of the fragment as the view of the text of the
+	     * run, without copying.
+	     */
+	    public CharSequence text()
 	    {
-		return run.text.substring(fromPos, toPos);
+		return run.text.subSequence(fromPos, toPos);
 	    }
 	    @Override public String toString()
 	    {
-		return text();
+		return text().toString();
 	    }
 	}
 
+	/**
+	 * The line of the block, the range of the text of the block.
+	 */
 	static public final class Line
 	{
-	    public final Fragment[] fragments;
-	    public final String text;
-	    Line(List<Fragment> fragments)
+	    private final WebKitBlockBase block;
+	    public final int start, end;
+	    Line(WebKitBlockBase block, int start, int end)
+	    {
+		this.block = block;
+		this.start = start;
+		this.end = end;
+	    }
+	    /**
+	     * Splits the line into the fragments of the runs.
+	     */
+	    public Fragment[] getFragments()
+	    {
+		final var runStarts = block.runStarts;
+		final var res = new ArrayList<Fragment>();
+		for(int i = Math.max(upperBound(runStarts, start) - 1, 0);i < block.runs.size() && runStarts[i] < end;i++)
+		{
+		    final int from = Math.max(start, runStarts[i]) - runStarts[i], to = Math.min(end, runStarts[i + 1]) - runStarts[i];
+		    if (from < to)
+			res.add(new Fragment(block.runs.get(i), from, to));
+		}
+		return res.toArray(new Fragment[res.size()]);
+	    }
+	    /**
+	     * Makes the string of the line. The string isn't kept, the line
+	     * references only the texts of the runs.
+	     */
+	    public String getText()
 	    {
-		notNull(fragments, "fragments");
-		this.fragments = fragments.toArray(new Fragment[fragments.size()]);
-		final var b = new StringBuilder();
-		for(var f: fragments)
-		    b.append(f.text());
-		this.text = new String(b);
+		final var runStarts = block.runStarts;
+		final var b = new StringBuilder(end - start);
+		for(int i = Math.max(upperBound(runStarts, start) - 1, 0);i < block.runs.size() && runStarts[i] < end;i++)
+		    b.append(block.runs.get(i).text, Math.max(start, runStarts[i]) - runStarts[i], Math.min(end, runStarts[i + 1]) - runStarts[i]);
+		return new String(b);
 	    }
 	}
 
@@ -18,12 +18,19 @@ package org.luwrain.web;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 
-import javafx.concurrent.Worker;
 import javafx.scene.web.WebEngine;
 import netscape.javascript.JSObject;
 import org.w3c.dom.html.*;
+import org.w3c.dom.views.DocumentView;
 
+import com.sun.webkit.dom.DOMWindowImpl;
+
+import static org.luwrain.core.NullCheck.*;
+import static org.luwrain.graphical.FxThread.*;
 import static org.luwrain.app.webinspector.App.log;
 import static org.luwrain.util.ResourceUtils.getStringResource;
 
@@ -31,43 +38,108 @@ public final class WebKitBlocks
 {
 	static private final String MUTATION_OBSERVER_INJECTION = "mutation_observer_injection.js";
 	static private String mutationObserverInjection = null;
+    static private final int
+	FIRST_BATCH_SIZE = 64,
+	MAX_BATCH_SIZE = 4096,
+	LAYOUT_CACHE_SIZE = 4;
+    static private final BooleanSupplier NOT_CANCELLED = ()->false;
+
+    /**
+     * The receiver of the blocks produced in the streaming mode. The batches
+     * go from top to bottom, the positions of the blocks in every batch are
+     * final.
+     */
+    public interface BatchListener
+    {
+	/**
+	 * Receives the next batch of the blocks. Called on the worker thread.
+	 *
+	 * @param batch The blocks of the batch
+	 * @param first True if this is the first batch of the page
+	 * @param last True if this is the last batch of the page
+	 */
+	void onBatch(List<WebKitBlock> batch, boolean first, boolean last);
+    }
 
     public final List<WebKitBlock> blocks = new ArrayList<>();
 
+    //The blocks of the last snapshot as they were collected, before any layout
+    private List<WebKitBlock> collected = null;
+    //The last snapshot of the whole page, which maps the changed elements to the collected blocks
+    private volatile DomSnapshot snapshot = null;
+    //The collected blocks by the indices of their nodes in the last snapshot, made on the first request
+    private Map<Integer, WebKitBlock> collectedByIndex = null;
+    //The layouts of the last used widths, the least recently used one goes first
+    private final Map<Integer, Layout> layouts = new LinkedHashMap<>(LAYOUT_CACHE_SIZE * 2, 0.75f, true){
+	    @Override protected boolean removeEldestEntry(Map.Entry<Integer, Layout> eldest)
+	    {
+		return size() > LAYOUT_CACHE_SIZE;
+	    }
+	};
+
     final WebEngine engine;
     final HTMLDocument doc;
     final HTMLBodyElement body;
+    final DOMWindowImpl window;
+    final TagTable tags;
+    final LineBreaker breaker;
 
 	private boolean needsToBeUpdated = false;
+    private boolean mutationObserverEnabled = false;
+    private WebKitGeom geom = null;
+    private volatile UpdateScheduler updateScheduler = null;
+    //The number of the mutation records since the last snapshot, only for the log
+    private int mutationCount = 0;
+    //The identifiers of the changed elements since the last snapshot, the flag is set if not only the texts have changed
+    private final Set<Integer> dirtyIds = new HashSet<>();
+    private boolean structuralChange = false;
+
+    static private final class Layout
+    {
+	final List<WebKitBlock> blocks;
+	final BlockGeom geom;
+	Layout(List<WebKitBlock> blocks, BlockGeom geom)
+	{
+	    this.blocks = blocks;
+	    this.geom = geom;
+	}
+    }
 
     public WebKitBlocks(WebEngine engine)
     {
+	this(engine, TagTable.getDefault());
+    }
+
+    public WebKitBlocks(WebEngine engine, TagTable tags)
+    {
+	this(engine, tags, LineBreaker.WHITESPACE);
+    }
+
+    public WebKitBlocks(WebEngine engine, TagTable tags, LineBreaker breaker)
+    {
+	notNull(tags, "tags");
+	notNull(breaker, "breaker");
 		this.engine = engine;
+		this.tags = tags;
+		this.breaker = breaker;
 		this.doc = (HTMLDocument)engine.documentProperty().getValue();
         this.body = (HTMLBodyElement)doc.getBody();
+	this.window = (DOMWindowImpl)((DocumentView)doc).getDefaultView();
 		enableMutationObserver();
     }
 
+    /**
+     * Scans the page and builds its blocks. To change only the width of the
+     * blocks already built use {@link #reflow(int)}.
+     *
+     * @param desiredWidth The width of the area to show the blocks in
+     */
     public List<WebKitBlock> process(int desiredWidth)
     {
 	try {
 	    if (desiredWidth <= 0)
 		throw new IllegalArgumentException("desiredWidth (" + desiredWidth + ") must be a positive number");
-	    blocks.clear();
-	    final var c = new WebKitBlocksCollector(engine);
-	    c.process(body);
-	    blocks.addAll(c.blocks);
-	    int maxWidth = 0;
-	    for(var b: blocks)
-		maxWidth = Math.max(maxWidth, b.right);
-	    final float scale = Float.valueOf(desiredWidth) / maxWidth;
-	    log("Scale is " + String.format("%.2f", scale));
-	    blocks.parallelStream().forEach(b->b.rescale(scale));
-	    log("Building lines");
-	    blocks.forEach(b->b.buildLines());//FIXME:parallelStream
-	    log("Building of lines completed");
-	    new BlockGeom(blocks).process();
-	    return blocks;
+	    return build(takeSnapshot(), desiredWidth, null, NOT_CANCELLED);
 	}
     catch(Throwable e)
     {
@@ -77,23 +149,460 @@ public final class WebKitBlocks
     }
     }
 
+    /**
+     * Starts the scanning of the page from the viewport and copies the part
+     * of the DOM whose geometry is already known. The rest of the page is
+     * scanned in the background. Must be called on the FX thread.
+     *
+     * @param margin The number of screens below the viewport to scan at once
+     * @param onCompleted The action to run on the FX thread when the whole page is scanned
+     * @return The snapshot of the first screens
+     */
+    DomSnapshot scanViewport(int margin, Runnable onCompleted)
+    {
+	needsToBeUpdated = false;
+	geom = new WebKitGeom(engine);
+	geom.scanViewport(margin, onCompleted);
+	return takeSnapshot();
+    }
+
+    /**
+     * Brings the geometry up to date and copies the DOM. Must be called on
+     * the FX thread.
+     */
+    DomSnapshot takeSnapshot()
+    {
+	if (geom == null)
+	    geom = new WebKitGeom(engine); else
+	    if (needsToBeUpdated)
+	    {
+		needsToBeUpdated = false;
+		log("Updating the geometry after " + mutationCount + " mutation records");
+		geom.rescan();
+	    }
+	mutationCount = 0;
+	dirtyIds.clear();
+	structuralChange = false;
+	final var snap = DomSnapshot.create(geom, tags, body, !geom.isCompleted());
+	log("Snapshot of " + snap.size() + " nodes with " + snap.getTextLength() + " characters, pruned " + snap.getPrunedCount() + " invisible subtrees with " + geom.getPrunedCount() + " elements");
+	final var unknownTags = snap.getUnknownTags();
+	if (!unknownTags.isEmpty())
+	{
+	    int unknownCount = 0;
+	    for(var c: unknownTags.values())
+		unknownCount += c.intValue();
+	    log("" + unknownCount + " nodes with " + unknownTags.size() + " unknown tags: " + unknownTags.toString());
+	}
+	return snap;
+    }
+
+    /**
+     * Collects the blocks from the snapshot and lays them out. Doesn't touch
+     * the DOM and may be called on any thread. The collected blocks are kept
+     * for the layouts of the other widths, the layouts made for the previous
+     * snapshot are dropped.
+     *
+     * @param listener The receiver of the batches, may be null
+     * @param cancelled The check of the cancellation, made before every collected block and before every batch
+     * @return All blocks of the snapshot
+     * @throws CancellationException if the processing was cancelled
+     */
+    synchronized List<WebKitBlock> build(DomSnapshot snap, int desiredWidth, BatchListener listener, BooleanSupplier cancelled)
+    {
+	if (cancelled.getAsBoolean())
+	    throw new CancellationException();
+	final var res = SnapshotCollector.collect(snap, window, breaker, cancelled);
+	//The blocks of the previous snapshot stay untouched, if the collecting was cancelled
+	collected = res;
+	collectedByIndex = null;
+	snapshot = !snap.isPartial()?snap:null;
+	layouts.clear();
+	return layout(desiredWidth, listener, cancelled);
+    }
+
+    /**
+     * Lays out the blocks of the last snapshot for another width without
+     * scanning the page and collecting the blocks once again. The layouts of
+     * the last {@code LAYOUT_CACHE_SIZE} widths are kept, so switching
+     * between them doesn't require any calculations at all.
+     *
+     * @param desiredWidth The width of the area to show the blocks in
+     * @return The blocks laid out for the given width
+     */
+    public synchronized List<WebKitBlock> reflow(int desiredWidth)
+    {
+	if (desiredWidth <= 0)
+	    throw new IllegalArgumentException("desiredWidth (" + desiredWidth + ") must be a positive number");
+	if (collected == null)
+	    throw new IllegalStateException("No collected blocks, the page must be processed first");
+	return layout(desiredWidth, null, NOT_CANCELLED);
+    }
+
+    /**
+     * Lays out the collected blocks for the given width. Every layout is
+     * made on the copies of the collected blocks, which share the runs with
+     * their tables of the breaks, so only the rescaling, the lines and the
+     * final positions of the blocks are calculated here. The lines and the
+     * positions are calculated in batches from top to bottom, every batch
+     * is given to the listener as soon as it is ready.
+     *
+     * @param listener The receiver of the batches, may be null
+     * @param cancelled The check of the cancellation, made before every batch
+     * @return All blocks of the layout
+     */
+    private List<WebKitBlock> layout(int desiredWidth, BatchListener listener, BooleanSupplier cancelled)
+    {
+	final var event = new WebEvents.Layout();
+	event.begin();
+	//The timings are taken only for the recording, the layout doesn't pay for them otherwise
+	final boolean timed = event.isEnabled();
+	final long allocatedBefore = timed?WebEvents.getAllocatedBytes():-1;
+	event.width = desiredWidth;
+	final var cached = layouts.get(Integer.valueOf(desiredWidth));
+	if (cached != null)
+	{
+	    log("Taking the layout for the width " + desiredWidth + " from the cache");
+	    if (event.shouldCommit())
+	    {
+		event.cached = true;
+		event.blockCount = cached.blocks.size();
+		event.commit();
+	    }
+	    if (listener != null)
+		listener.onBatch(new ArrayList<>(cached.blocks), true, true);
+	    blocks.clear();
+	    blocks.addAll(cached.blocks);
+	    return new ArrayList<>(cached.blocks);
+	}
+	final var res = new ArrayList<WebKitBlock>(collected.size());
+	int maxWidth = 0;
+	for(var b: collected)
+	{
+	    res.add(new WebKitBlock(b));
+	    maxWidth = Math.max(maxWidth, b.srcRight);
+	}
+	final float scale = Float.valueOf(desiredWidth) / maxWidth;
+	log("Scale is " + String.format("%.2f", scale));
+	long time = timed?System.nanoTime():0;
+	final var blockGeom = new BlockGeom(res);
+	blockGeom.rescale(scale, WebKitBlock.MIN_BLOCK_WIDTH);
+	blockGeom.sort();
+	if (timed)
+	    event.rescaleTime = System.nanoTime() - time;
+	final var sorted = new ArrayList<WebKitBlock>(res.size());
+	for(var b: blockGeom.blocks)
+	    sorted.add((WebKitBlock)b);
+	log("Building lines");
+	//The first batch is small to be shown as soon as possible, the next ones grow to be built in parallel
+	int batchSize = FIRST_BATCH_SIZE;
+	for(int pos = 0;pos < sorted.size() || pos == 0;pos += batchSize, batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE))
+	{
+	    if (cancelled.getAsBoolean())
+		throw new CancellationException();
+	    final int end = Math.min(pos + batchSize, sorted.size());
+	    final var batch = sorted.subList(pos, end);
+	    if (timed)
+		time = System.nanoTime();
+	    WebKitBlockBase.buildLines(batch);
+	    if (timed)
+	    {
+		final long now = System.nanoTime();
+		event.buildLinesTime += now - time;
+		time = now;
+	    }
+	    blockGeom.process(pos, end);
+	    if (timed)
+		event.blockGeomTime += System.nanoTime() - time;
+	    if (listener != null)
+		listener.onBatch(new ArrayList<>(batch), pos == 0, end == sorted.size());
+	}
+	log("Building of lines completed");
+	if (event.shouldCommit())
+	{
+	    event.blockCount = sorted.size();
+	    for(var b: sorted)
+		event.lineCount += b.lines.size();
+	    final long allocatedAfter = WebEvents.getAllocatedBytes();
+	    event.allocated = allocatedBefore >= 0 && allocatedAfter >= 0?allocatedAfter - allocatedBefore:-1;
+	    event.commit();
+	}
+	layouts.put(Integer.valueOf(desiredWidth), new Layout(sorted, blockGeom));
+	blocks.clear();
+	blocks.addAll(sorted);
+	return new ArrayList<>(blocks);
+    }
+
+    /**
+     * Takes the modifications of the page into account and builds the
+     * blocks once again. The snapshot is taken on the FX thread, the blocks
+     * are built on the calling thread, which mustn't be the FX thread. If
+     * the scanning of the page started by {@link PageProcessor}
+     * isn't over yet, nothing is done: the modifications are taken by the
+     * snapshot made on its completion.
+     *
+     * @param desiredWidth The width of the area to show the blocks in
+     * @param listener The receiver of the batches, may be null
+     * @return The blocks of the whole page or null, if the page wasn't updated
+     */
+    public List<WebKitBlock> update(int desiredWidth, BatchListener listener)
+    {
+	return update(desiredWidth, listener, NOT_CANCELLED);
+    }
+
+    /**
+     * Takes the modifications of the page into account and builds the
+     * blocks once again, stopping as soon as the update becomes useless,
+     * usually on the navigation to another page. If only the texts of the
+     * elements have changed since the last snapshot, only the blocks
+     * containing them are collected once again, otherwise the snapshot of
+     * the whole page is taken.
+     *
+     * @param desiredWidth The width of the area to show the blocks in
+     * @param listener The receiver of the batches, may be null
+     * @param cancelled The check of the cancellation
+     * @return The blocks of the whole page or null, if the page wasn't updated
+     * @throws CancellationException if the update was cancelled
+     */
+    public List<WebKitBlock> update(int desiredWidth, BatchListener listener, BooleanSupplier cancelled)
+    {
+	notNull(cancelled, "cancelled");
+	if (desiredWidth <= 0)
+	    throw new IllegalArgumentException("desiredWidth (" + desiredWidth + ") must be a positive number");
+	if (cancelled.getAsBoolean())
+	    throw new CancellationException();
+	final var snap = new AtomicReference<DomSnapshot>();
+	final var base = new AtomicReference<DomSnapshot>();
+	final var changes = new AtomicReference<Map<Integer, DomSnapshot>>();
+	runSync(()->{
+		if (geom == null || !geom.isCompleted())
+		    return;
+		final var s = snapshot;
+		final var c = takeChanges(s);
+		if (c != null)
+		{
+		    base.set(s);
+		    changes.set(c);
+		} else
+		    snap.set(takeSnapshot());
+	    });
+	if (snap.get() == null && changes.get() == null)
+	{
+	    log("The page isn't scanned completely, skipping the update");
+	    return null;
+	}
+	if (changes.get() != null)
+	{
+	    final var res = applyChanges(base.get(), changes.get(), desiredWidth, listener, cancelled);
+	    if (res != null)
+		return res;
+	    log("Unable to update only the changed blocks, taking the snapshot of the whole page");
+	    runSync(()->snap.set(takeSnapshot()));
+	}
+	return build(snap.get(), desiredWidth, listener, cancelled);
+    }
+
+    /**
+     * Maps the changed elements to the blocks of the last snapshot and
+     * copies the subtrees of these blocks. The changed element may be
+     * inside of the inline markup, so the closest block element above it is
+     * taken. Must be called on the FX thread.
+     *
+     * @param snap The last snapshot of the whole page, may be null
+     * @return The copies of the changed blocks by the indices of their nodes in the snapshot or null, if the whole page must be taken once again
+     */
+    private Map<Integer, DomSnapshot> takeChanges(DomSnapshot snap)
+    {
+	if (snap == null || structuralChange || dirtyIds.isEmpty())
+	    return null;
+	if (needsToBeUpdated)
+	{
+	    needsToBeUpdated = false;
+	    log("Updating the geometry after " + mutationCount + " mutation records in " + dirtyIds.size() + " elements");
+	    geom.rescan();
+	}
+	mutationCount = 0;
+	final var res = new HashMap<Integer, DomSnapshot>();
+	for(var id: dirtyIds)
+	{
+	    int index = snap.findByGeomId(id.intValue());
+	    while(index >= 0 && snap.getKind(index) == DomSnapshot.INLINE)
+		index = snap.getParent(index);
+	    if (index < 0 || snap.getKind(index) != DomSnapshot.BLOCK)
+		return null;
+	    if (!res.containsKey(Integer.valueOf(index)))
+		res.put(Integer.valueOf(index), DomSnapshot.create(geom, tags, snap.getNode(index), false));
+	}
+	dirtyIds.clear();
+	return res;
+    }
+
+    /**
+     * Collects the changed blocks once again and puts them instead of the
+     * previous ones. Only the texts of the blocks may change this way, the
+     * blocks whose positions have changed or which have lost all their texts
+     * can't be handled without the snapshot of the whole page.
+     *
+     * @param snap The snapshot the changes were taken for
+     * @param changes The copies of the changed blocks by the indices of their nodes in the snapshot
+     * @return All blocks of the page or null, if the whole page must be taken once again
+     * @throws CancellationException if the update was cancelled
+     */
+    private synchronized List<WebKitBlock> applyChanges(DomSnapshot snap, Map<Integer, DomSnapshot> changes, int desiredWidth, BatchListener listener, BooleanSupplier cancelled)
+    {
+	if (snap != snapshot || collected == null)
+	    return null;
+	if (collectedByIndex == null)
+	{
+	    collectedByIndex = new HashMap<>();
+	    for(var b: collected)
+		if (b.snapIndex >= 0)
+		    collectedByIndex.put(Integer.valueOf(b.snapIndex), b);
+	}
+	final var replaced = new IdentityHashMap<WebKitBlock, WebKitBlock>();
+	for(var e: changes.entrySet())
+	{
+	    if (cancelled.getAsBoolean())
+		throw new CancellationException();
+	    final var old = collectedByIndex.get(e.getKey());
+	    if (old == null)
+		return null;
+	    //The root of the copied subtree goes first, the nested blocks are left as they are
+	    WebKitBlock block = null;
+	    for(var b: SnapshotCollector.collect(e.getValue(), window, breaker, cancelled))
+		if (b.snapIndex == 0)
+		{
+		    block = b;
+		    break;
+		}
+	    if (block == null || block.srcLeft != old.srcLeft || block.srcRight != old.srcRight || block.srcTop != old.srcTop)
+		return null;
+	    block.snapIndex = e.getKey().intValue();
+	    replaced.put(old, block);
+	}
+	for(var it = collected.listIterator();it.hasNext();)
+	{
+	    final var b = replaced.get(it.next());
+	    if (b != null)
+		it.set(b);
+	}
+	for(var b: replaced.values())
+	    collectedByIndex.put(Integer.valueOf(b.snapIndex), b);
+	log("Collected " + replaced.size() + " changed blocks without the snapshot of the whole page");
+	final var cached = layouts.get(Integer.valueOf(desiredWidth));
+	//The layouts of the other widths keep the previous blocks, they are made once again on request
+	layouts.clear();
+	if (cached == null || !relayout(cached, replaced.values()))
+	    return layout(desiredWidth, listener, cancelled);
+	layouts.put(Integer.valueOf(desiredWidth), cached);
+	if (listener != null)
+	    listener.onBatch(new ArrayList<>(cached.blocks), true, true);
+	blocks.clear();
+	blocks.addAll(cached.blocks);
+	return new ArrayList<>(cached.blocks);
+    }
+
+    /**
+     * Puts the copies of the changed blocks into the existing layout and
+     * moves only the blocks below them, which are affected by the new
+     * heights, with {@link BlockGeom#update(Collection)}. The positions of
+     * the changed blocks on the page are the same, so the scale and the
+     * order of the layout stay valid.
+     *
+     * @param layout The layout for the width of the update
+     * @param changed The collected blocks replacing the previous ones
+     * @return True if the layout is updated, false if some of the previous blocks aren't found in it
+     */
+    private boolean relayout(Layout layout, Collection<WebKitBlock> changed)
+    {
+	final var byIndex = new HashMap<Integer, WebKitBlock>();
+	for(var b: changed)
+	    byIndex.put(Integer.valueOf(b.snapIndex), b);
+	final var copies = new ArrayList<WebKitBlock>(changed.size());
+	final var positions = new ArrayList<Integer>(changed.size());
+	for(int i = 0;i < layout.blocks.size();i++)
+	{
+	    final var b = byIndex.get(Integer.valueOf(layout.blocks.get(i).snapIndex));
+	    if (b == null)
+		continue;
+	    copies.add(new WebKitBlock(b));
+	    positions.add(Integer.valueOf(i));
+	}
+	if (copies.size() != changed.size())
+	    return false;
+	for(int i = 0;i < copies.size();i++)
+	{
+	    final int pos = positions.get(i).intValue();
+	    layout.geom.replace(layout.blocks.get(pos), copies.get(i));
+	    layout.blocks.set(pos, copies.get(i));
+	}
+	WebKitBlockBase.buildLines(copies);
+	final var moved = layout.geom.update(copies);
+	log("Updated the layout with " + copies.size() + " changed blocks, " + moved.size() + " blocks moved");
+	return true;
+    }
+
+    /**
+     * Sets the scheduler of the updates, which gets all modifications of
+     * the page recorded by the mutation observer.
+     *
+     * @param updateScheduler The scheduler or null, if the page isn't updated automatically
+     */
+    public void setUpdateScheduler(UpdateScheduler updateScheduler)
+    {
+	this.updateScheduler = updateScheduler;
+    }
+
+    /**
+     * Receives the modifications of the page from the mutation observer.
+     * The observer collects the mutation records in the page and calls it
+     * once per animation frame, only if there are the records which may
+     * change the texts or the geometry. The modified subtrees themselves
+     * are kept in the page and are taken by {@link WebKitGeom#rescan()}, so
+     * only they are scanned once again. The identifiers of the changed
+     * elements let the next update collect only the blocks containing them,
+     * unless the changes are structural. Called on the FX thread.
+     *
+     * @param count The number of the mutation records, including the ignored ones
+     * @param ids The comma-separated identifiers of the closest scanned elements above the changes
+     * @param structural True if not only the texts have changed or some changes are outside of the scanned elements
+     */
+    public void onMutations(int count, String ids, boolean structural)
+    {
+	needsToBeUpdated = true;
+	mutationCount += count;
+	if (structural)
+	    structuralChange = true;
+	if (ids != null && !ids.isEmpty())
+	{
+	    int idCount = 1;
+	    for(int i = 0;i < ids.length();i++)
+		if (ids.charAt(i) == ',')
+		    idCount++;
+	    for(int id: WebKitGeom.parseInts(ids, idCount))
+		dirtyIds.add(Integer.valueOf(id));
+	}
+	final var s = updateScheduler;
+	if (s != null)
+	    s.onMutations(count);
+    }
+
+    /**
+     * Installs the mutation observer into the page and makes this object
+     * the receiver of its records. Does nothing if already called for this
+     * object, the injection itself installs the observer only once per
+     * document, keeping the records not handled yet.
+     */
 	public void enableMutationObserver()
 	{
+	    if (mutationObserverEnabled)
+		return;
 		try {
 			if (mutationObserverInjection == null)
-			{
 				mutationObserverInjection = getStringResource(getClass(), MUTATION_OBSERVER_INJECTION);
-				engine.getLoadWorker().stateProperty().addListener((observableValue, oldState, newState) ->
-				{
-					if (newState == Worker.State.SUCCEEDED)
-					{
-						JSObject jsObject = (JSObject) engine.executeScript("window");
-						jsObject.setMember("webKitBlocks", this);
-
-						engine.executeScript(mutationObserverInjection);
-					}
-				});
-			}
+			final JSObject jsObject = (JSObject) engine.executeScript("window");
+			jsObject.setMember("webKitBlocks", this);
+			engine.executeScript(mutationObserverInjection);
+			mutationObserverEnabled = true;
 		}
 		catch (IOException e)
 		{
@@ -105,6 +614,17 @@ public final class WebKitBlocks
 		}
 	}
 
+    /**
+     * Returns the geometry scanner of the page, shared with the web
+     * inspector, so it doesn't need to scan the page once again.
+     *
+     * @return The geometry scanner or null, if the blocks weren't processed yet
+     */
+    public WebKitGeom getGeom()
+    {
+	return geom;
+    }
+
 	public boolean isNeedsToBeUpdated()
 	{
 		return needsToBeUpdated;
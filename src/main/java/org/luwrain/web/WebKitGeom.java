@@ -33,6 +33,7 @@ import javafx.scene.web.WebEngine;
 
 import org.luwrain.core.*;
 
+import static org.luwrain.core.NullCheck.*;
 import static org.luwrain.graphical.FxThread.*;
 import static org.luwrain.util.ResourceUtils.*;
 import static org.luwrain.app.webinspector.App.log;
@@ -41,16 +42,31 @@ public final class WebKitGeom
 {
     static final String
 	LOG_COMPONENT = "web",
-	INJECTION_NAME = "injection.js";
+	INJECTION_NAME = "injection.js",
+	SCANNER_OBJECT = "window.$LUWRAIN";
     static private String
 	injection = null;
 
+    /**
+     * The way of taking the scanning results from the page. {@code PACKED}
+     * takes the identifiers, the rectangles and the texts of all nodes as
+     * three strings and stores them in {@link PageGeometry};
+     * {@code PER_MEMBER} reads every property of every node separately and
+     * is kept as a fallback.
+     */
+    public enum Mode {PACKED, PER_MEMBER};
+
     final WebEngine engine;
+    final Mode mode;
+    private JSObject jsRes = null;
     private Scanner scanner = null;
+    private long domTime = -1, domLastTime = -1;
+    private boolean completed = true;
 
-    public WebKitGeom(WebEngine engine)
+    public WebKitGeom(WebEngine engine, Mode mode)
     {
 	this.engine = engine;
+	this.mode = mode;
 	try {
 	    if (injection == null)
 	    {
@@ -65,31 +81,331 @@ public final class WebKitGeom
 	}
     }
 
+    public WebKitGeom(WebEngine engine)
+    {
+	this(engine, Mode.PACKED);
+    }
+
     public GeomEntry getEntry(Node node)
+    {
+	return getEntry(getId(node));
+    }
+
+    /**
+     * Returns the identifier of the node in the geometry. Reading it costs
+     * the call to the page, so the callers asking several questions about
+     * the same node take it once and use the methods with the identifier.
+     *
+     * @return The identifier or -1, if the node wasn't scanned
+     */
+    public int getId(Node node)
+    {
+	ensure();
+	if (scanner == null)
+	    scan();
+	return scanner.getId(node);
+    }
+
+    public GeomEntry getEntry(int id)
     {
 	ensure();
-	if (scanner != null)
-	    return scanner.nodes.get(node);
-	final Object res = engine.executeScript(injection);
+	if (scanner == null)
+	    scan();
+	return scanner.getEntry(id);
+    }
+
+    /**
+     * Returns the slot of the node in the geometry, the values of the node
+     * are read by it without the repeated lookups of the identifier. The
+     * slot is valid until the next scanning.
+     *
+     * @return The slot or -1, if the node wasn't scanned
+     */
+    public int getSlot(int id)
+    {
+	ensure();
+	if (scanner == null)
+	    scan();
+	return scanner.getSlot(id);
+    }
+
+    /**
+     * Checks that the node is the root of the subtree the injection found
+     * invisible: the element isn't displayed or has zero size with clipped
+     * overflow. Its descendants aren't scanned and mustn't be
+     * collected.
+     */
+    public boolean isPrunedAt(int slot) { return scanner.isPrunedAt(slot); }
+
+    /**
+     * Checks that the own texts of the element aren't shown because of its
+     * hidden visibility. Unlike the pruned elements, its descendants are
+     * scanned and collected, since they may be visible.
+     */
+    public boolean isInvisibleAt(int slot) { return scanner.isInvisibleAt(slot); }
+
+    public int getXAt(int slot) { return scanner.getXAt(slot); }
+    public int getYAt(int slot) { return scanner.getYAt(slot); }
+    public int getWidthAt(int slot) { return scanner.getWidthAt(slot); }
+    public int getHeightAt(int slot) { return scanner.getHeightAt(slot); }
+
+    /**
+     * The number of elements in the subtrees pruned as invisible by the
+     * last scanning.
+     */
+    public int getPrunedCount()
+    {
+	ensure();
+	if (jsRes == null)
+	    return 0;
+	return intValue(jsRes.getMember("prunedCount"));
+    }
+
+    /**
+     * Returns the geometry of the page if it was scanned in the packed mode.
+     *
+     * @return The page geometry or null, if the page wasn't scanned or the scanning was performed without packing
+     */
+    public PageGeometry getGeometry()
+    {
+	if (scanner instanceof PackedScanner packedScanner)
+	    return packedScanner.geometry;
+	return null;
+    }
+
+    /**
+     * Performs the scanning of the page. Normally it is done implicitly on
+     * the first request of the geometry of any node.
+     *
+     * @return The number of nodes in the scanning result
+     */
+    public int scan()
+    {
+	ensure();
+	final var event = new WebEvents.GeomScan();
+	event.begin();
+	final Object res = getScannerObject();
 	if (res == null)
 	    throw new RuntimeException("The result of web scanning is null");
 	if (!(res instanceof JSObject))
 	    throw new RuntimeException("The result of web scanning is not an instance of JSObject");
 	Log.debug(LOG_COMPONENT, "Performing scanning of the web page");
 	log("Performing scanning of the web page");
-	final JSObject jsRes = (JSObject)res;
-	scanner = new Scanner(jsRes);
-	return scanner.nodes.get(node);
+	this.jsRes = (JSObject)res;
+	this.completed = true;
+	final Object modified = jsRes.call("scan", Boolean.TRUE);
+	log("Scanning completed, modified: " + modified);
+	this.domTime = longValue(jsRes.getMember("domLT"));
+	this.domLastTime = longValue(jsRes.getMember("domLastLT"));
+	log("DOM scanning took " + domLastTime + " ms");
+	if (mode == Mode.PACKED)
+	    try {
+		final var packedScanner = new PackedScanner();
+		packedScanner.add((JSObject)jsRes.call("packDOM"));
+		scanner = packedScanner;
+		return commitScan(event, "full", scanner.size(), domLastTime);
+	    }
+	    catch(RuntimeException e)
+	    {
+		Log.error(LOG_COMPONENT, "unable to take the packed geometry, falling back to reading of separate members: " + e.getClass().getName() + ": " + e.getMessage());
+		log("Packed geometry failed: " + e.getMessage());
+	    }
+	scanner = new MemberScanner(jsRes);
+	return commitScan(event, "full", scanner.size(), domLastTime);
+    }
+
+    /**
+     * Scans only the nodes intersecting the viewport extended by the given
+     * margin, so the blocks of the first screens can be built right away. The
+     * rest of the page is scanned by the injection in the idle time in
+     * chunks, which are added to the geometry as they arrive. The element
+     * nodes of the postponed part have no geometry until the completion,
+     * it can be checked with {@link #isCompleted()}.
+     *
+     * @param margin The number of screens below the viewport to scan at once
+     * @param onCompleted The action to run on the FX thread when the whole page is scanned
+     * @return The number of nodes scanned at once
+     */
+    public int scanViewport(int margin, Runnable onCompleted)
+    {
+	ensure();
+	if (margin < 0)
+	    throw new IllegalArgumentException("margin (" + margin + ") can't be negative");
+	notNull(onCompleted, "onCompleted");
+	final var event = new WebEvents.GeomScan();
+	event.begin();
+	//The background scanning is recorded as the single event from the start to the last chunk
+	final var backgroundEvent = new WebEvents.GeomScan();
+	backgroundEvent.begin();
+	final Object res = getScannerObject();
+	if (!(res instanceof JSObject))
+	    throw new RuntimeException("The result of web scanning is not an instance of JSObject");
+	this.jsRes = (JSObject)res;
+	final var packedScanner = new PackedScanner();
+	packedScanner.add((JSObject)jsRes.call("scanViewport", Integer.valueOf(margin)));
+	this.scanner = packedScanner;
+	this.completed = false;
+	final var window = (JSObject)engine.executeScript("window");
+	window.setMember("luwrainGeomListener", new ChunkListener(packedScanner, onCompleted, backgroundEvent));
+	log("Viewport scanning: " + packedScanner.size() + " nodes");
+	return commitScan(event, "viewport", packedScanner.size(), 0);
+    }
+
+    /**
+     * Checks that the geometry of the whole page is available.
+     *
+     * @return False if the background scanning started by {@link #scanViewport(int, Runnable)} is still in progress
+     */
+    public boolean isCompleted()
+    {
+	return completed;
     }
 
-    final class Scanner
+    public final class ChunkListener
     {
-	final Map<Node, GeomEntry> nodes = new HashMap<>();
-	Scanner(JSObject src)
+	private final PackedScanner packedScanner;
+	private final Runnable onCompleted;
+	private final WebEvents.GeomScan event;
+	ChunkListener(PackedScanner packedScanner, Runnable onCompleted, WebEvents.GeomScan event)
+	{
+	    this.packedScanner = packedScanner;
+	    this.onCompleted = onCompleted;
+	    this.event = event;
+	}
+	public void onChunk(boolean lastChunk)
+	{
+	    if (scanner != packedScanner)
+		return;
+	    packedScanner.add((JSObject)jsRes.call("takeChunk"));
+	    if (!lastChunk)
+		return;
+	    completed = true;
+	    domLastTime = longValue(jsRes.getMember("domLastLT"));
+	    Log.debug(LOG_COMPONENT, "background geom scanning completed: " + packedScanner.size());
+	    log("Background scanning completed: " + packedScanner.size() + " nodes");
+	    commitScan(event, "background", packedScanner.size(), domLastTime);
+	    onCompleted.run();
+	}
+    }
+
+    /**
+     * Returns the scanning object of the current document. The injection is
+     * evaluated only once per document, it installs the object as {@code
+     * window.$LUWRAIN}, so the script isn't compiled again on refreshes and
+     * the state of the object persists between scannings.
+     */
+    private Object getScannerObject()
+    {
+	final Object installed = engine.executeScript(SCANNER_OBJECT);
+	if (installed instanceof JSObject)
+	    return installed;
+	log("Installing the scanner");
+	return engine.executeScript(injection);
+    }
+
+    /**
+     * Updates the scanning result only for the subtrees modified since the
+     * previous scanning, as they are recorded by the mutation observer. The
+     * nodes removed from the document are dropped from the result, the nodes
+     * of the modified subtrees get the new geometry, the rest of the nodes
+     * keep their previous geometry. If there is no previous scanning result
+     * or there are too many modifications, the full scanning is performed.
+     *
+     * @return The number of nodes scanned again
+     */
+    public int rescan()
+    {
+	ensure();
+	final var event = new WebEvents.GeomScan();
+	event.begin();
+	if (scanner == null || !(scanner instanceof PackedScanner packedScanner) || !packedScanner.geometry.isFor(engine.getDocument()))
+	    return scan();
+	final var res = (JSObject)jsRes.call("scanMutations");
+	if (Boolean.TRUE.equals(res.getMember("full")))
+	{
+	    log("Too many modifications, performing the full scanning");
+	    return scan();
+	}
+	final int[] removed = parseInts((String)res.getMember("removed"), intValue(res.getMember("removedCount")));
+	int removedCount = 0;
+	for(int id: removed)
+	    if (packedScanner.geometry.remove(id))
+		removedCount++;
+	final int changedCount = packedScanner.add((JSObject)res.getMember("changed"));
+	packedScanner.geometry.trim();
+	Log.debug(LOG_COMPONENT, "geom rescanning completed: " + changedCount + " changed, " + removedCount + " removed");
+	log("Rescanned " + changedCount + " nodes, removed " + removedCount);
+	return commitScan(event, "rescan", changedCount, 0);
+    }
+
+    static private int commitScan(WebEvents.GeomScan event, String kind, int nodeCount, long domTime)
+    {
+	if (event.shouldCommit())
+	{
+	    event.kind = kind;
+	    event.nodeCount = nodeCount;
+	    event.domTime = domTime;
+	    event.commit();
+	}
+	return nodeCount;
+    }
+
+    /**
+     * The time of the DOM scanning in the page, as kept by the injection in
+     * {@code domLT}. It is the time of the last scanning which found any
+     * modifications.
+     *
+     * @return The time in milliseconds or -1, if the scanning wasn't performed
+     */
+    public long getDomTime()
+    {
+	return domTime;
+    }
+
+    /**
+     * The time of the last DOM scanning in the page, as kept by the
+     * injection in {@code domLastLT}.
+     *
+     * @return The time in milliseconds or -1, if the scanning wasn't performed
+     */
+    public long getDomLastTime()
+    {
+	return domLastTime;
+    }
+
+    static private long longValue(Object o)
+    {
+	if (o instanceof Number n)
+	    return n.longValue();
+	return -1;
+    }
+
+    abstract class Scanner
+    {
+	abstract int getId(Node node);
+	abstract GeomEntry getEntry(int id);
+	abstract boolean contains(int id);
+	abstract int getSlot(int id);
+	abstract boolean isPrunedAt(int slot);
+	abstract boolean isInvisibleAt(int slot);
+	abstract int getXAt(int slot);
+	abstract int getYAt(int slot);
+	abstract int getWidthAt(int slot);
+	abstract int getHeightAt(int slot);
+	abstract int size();
+    }
+
+    /**
+     * Reads every property of every node separately. The identifiers of
+     * the nodes are their positions in the scanning result.
+     */
+    final class MemberScanner extends Scanner
+    {
+	final Map<Node, Integer> nodes = new HashMap<>();
+	final List<GeomEntry> entries = new ArrayList<>();
+	MemberScanner(JSObject src)
 	{
 	    ensure();
-	    final var doc = (HTMLDocument)engine.getDocument();
-	    final var window = (DOMWindowImpl)((DocumentView)doc).getDefaultView();
 	    final var root = (JSObject)src.getMember("dom");
 	    Object o;
 	    for(int i = 0;!(o = root.getSlot(i)).getClass().equals(String.class);i++)
@@ -106,17 +422,113 @@ public final class WebKitGeom
 		    width = intValue(rect.getMember("width"));
 		    height = intValue(rect.getMember("height"));
 		}
-		nodes.put(node, new GeomEntry(x, y, width, height, String.valueOf(text)));
+		nodes.put(node, Integer.valueOf(entries.size()));
+		entries.add(new GeomEntry(x, y, width, height, String.valueOf(text)));
 	    }
 	    Log.debug(LOG_COMPONENT, "geom scanning completed: " + nodes.size());
 	}
-	int intValue(Object o)
+	@Override int getId(Node node) { final var id = nodes.get(node); return id != null?id.intValue():-1; }
+	@Override GeomEntry getEntry(int id) { return contains(id)?entries.get(id):null; }
+	@Override boolean contains(int id) { return id >= 0 && id < entries.size(); }
+	//The identifiers are the positions in the list, so they are the slots as well
+	@Override int getSlot(int id) { return contains(id)?id:-1; }
+	@Override boolean isPrunedAt(int slot) { return false; }
+	@Override boolean isInvisibleAt(int slot) { return false; }
+	@Override int getXAt(int slot) { return entries.get(slot).x; }
+	@Override int getYAt(int slot) { return entries.get(slot).y; }
+	@Override int getWidthAt(int slot) { return entries.get(slot).width; }
+	@Override int getHeightAt(int slot) { return entries.get(slot).height; }
+	@Override int size() { return entries.size(); }
+    }
+
+    final class PackedScanner extends Scanner
+    {
+	final PageGeometry geometry;
+	PackedScanner()
+	{
+	    ensure();
+	    this.geometry = new PageGeometry(engine.getDocument());
+	}
+
+	int add(JSObject packed)
+	{
+	    final int count = intValue(packed.getMember("count"));
+	    final int[] ids = parseInts((String)packed.getMember("ids"), count);
+	    final int[] rects = parseInts((String)packed.getMember("rects"), count * 4);
+	    final int[] pruned = parseInts((String)packed.getMember("pruned"), intValue(packed.getMember("prunedCount")));
+	    final int[] invisible = parseInts((String)packed.getMember("invisible"), intValue(packed.getMember("invisibleCount")));
+	    geometry.add(ids, rects, (String)packed.getMember("texts"), pruned, invisible);
+	    return count;
+	}
+
+	@Override int getId(Node node) { return PageGeometry.getId(node); }
+	@Override GeomEntry getEntry(int id) { return geometry.getEntry(id); }
+	@Override boolean contains(int id) { return geometry.contains(id); }
+	@Override int getSlot(int id) { return geometry.getSlot(id); }
+	@Override boolean isPrunedAt(int slot) { return geometry.isPrunedAt(slot); }
+	@Override boolean isInvisibleAt(int slot) { return geometry.isInvisibleAt(slot); }
+	@Override int getXAt(int slot) { return geometry.getXAt(slot); }
+	@Override int getYAt(int slot) { return geometry.getYAt(slot); }
+	@Override int getWidthAt(int slot) { return geometry.getWidthAt(slot); }
+	@Override int getHeightAt(int slot) { return geometry.getHeightAt(slot); }
+	@Override int size() { return geometry.size(); }
+    }
+
+    static int intValue(Object o)
+    {
+	if(o == null) 
+	    return 0;
+	if(o instanceof Number)
+	    return ((Number)o).intValue();
+	return Double.valueOf(Double.parseDouble(o.toString())).intValue();
+    }
+
+    /**
+     * Parses the list of comma-separated numbers, truncating the fractional
+     * parts the same way as {@code Number.intValue()} does.
+     */
+    static int[] parseInts(String str, int count)
+    {
+	final int[] res = new int[count];
+	if (count == 0)
+	    return res;
+	final int len = str.length();
+	int pos = 0;
+	for(int i = 0;i < count;i++)
+	{
+	    if (pos > len)
+		throw new IllegalArgumentException("Too few numbers in the packed string, expected " + count + " but found " + i);
+	    int end = str.indexOf(',', pos);
+	    if (end < 0)
+		end = len;
+	    res[i] = parseInt(str, pos, end);
+	    pos = end + 1;
+	}
+	return res;
+    }
+
+    static private int parseInt(String str, int from, int to)
+    {
+	if (from == to)
+	    return 0;
+	int pos = from;
+	final boolean negative = str.charAt(pos) == '-';
+	if (negative)
+	    pos++;
+	long value = 0;
+	for(;pos < to;pos++)
 	{
-	    if(o == null) 
-		return 0;
-	    if(o instanceof Number)
-		return ((Number)o).intValue();
-	    return Double.valueOf(Double.parseDouble(o.toString())).intValue();
+	    final char ch = str.charAt(pos);
+	    if (ch == '.')
+		break;
+	    if (ch < '0' || ch > '9' || value > Integer.MAX_VALUE)
+		return Double.valueOf(Double.parseDouble(str.substring(from, to))).intValue();
+	    value = value * 10 + (ch - '0');
 	}
+	//Checking the exponent in the fractional part, like 1.5e+21
+	for(;pos < to;pos++)
+	    if (str.charAt(pos) == 'e' || str.charAt(pos) == 'E')
+		return Double.valueOf(Double.parseDouble(str.substring(from, to))).intValue();
+	return (int)(negative?-value:value);
     }
 }
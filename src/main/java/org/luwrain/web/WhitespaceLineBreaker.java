@@ -0,0 +1,57 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+/**
+ * Breaks the text at the beginnings of the words after the spaces.
+ */
+final class WhitespaceLineBreaker implements LineBreaker
+{
+    @Override public int[] getBreaks(CharSequence text)
+    {
+	final int len = text.length();
+	int count = 0;
+	for(int i = 1;i < len;i++)
+	    if (!isSpace(text.charAt(i)) && isSpace(text.charAt(i - 1)))
+		count++;
+	final int[] res = new int[count];
+	count = 0;
+	for(int i = 1;i < len;i++)
+	    if (!isSpace(text.charAt(i)) && isSpace(text.charAt(i - 1)))
+		res[count++] = i;
+	return res;
+    }
+
+    /**
+     * Checks the same characters as the deprecated {@code
+     * Character.isSpace()}, so the breaks stay where they were.
+     */
+    static private boolean isSpace(char ch)
+    {
+	switch(ch)
+	{
+	case ' ':
+	case '\t':
+	case '\n':
+	case '\f':
+	case '\r':
+	    return true;
+	default:
+	    return false;
+	}
+    }
+}
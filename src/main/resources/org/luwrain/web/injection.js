@@ -1,5 +1,5 @@
 
-new function () {
+window.$LUWRAIN = new function () {
 	this.name = '$LUWRAIN';
 	/** list nodes indexes (in dom list) to watch for changes */
 	this.watch = [];
@@ -13,63 +13,326 @@ new function () {
 	this.countVisible = 0;
 	this.countVisibleLast = 0;
 
-	/** next interval in milliseconds to rescan */
-	this.updateTimeout = 3000;
-
 	/** performance check, store timing for last method calls */
 	this.domLT = 0;
 	this.domLastLT = 0;
 
-	/** recursive method to return nodes' array about children of specified node
-	 * @param node target node */
-	this.nodewalk = function (node, lvl) {
+	/** return true if the children of the node must not be scanned */
+	this.isSkipped = function (node) {
+		var name = node.nodeName.toUpperCase();
+		return name === 'SCRIPT' || name === 'STYLE';
+	};
+	/** return planar array of all nodes under the specified one in document order, the walk is iterative and fills the single array
+	 * @param root target node */
+	this.nodewalk = function (root) {
 		var res = [];
-		if (node) {
-			if (node.nodeName.toUpperCase() === 'SCRIPT' || node.nodeName.toUpperCase() === 'STYLE') {
-				return res;
-			}
-
-			node = node.firstChild;
-			while (node != null) {
-				
-				res.push(node);
-				res = res.concat(this.nodewalk(node, lvl + 1));
-				node = node.nextSibling;
+		if (!root || this.isSkipped(root))
+			return res;
+		var node = root.firstChild;
+		while (node != null) {
+			res.push(node);
+			if (node.firstChild != null && !this.isSkipped(node)) {
+				node = node.firstChild;
+				continue;
 			}
+			while (node !== root && node.nextSibling == null)
+				node = node.parentNode;
+			node = (node !== root) ? node.nextSibling : null;
 		}
 		return res;
 	};
 	/** scan full document structure and return planar array of node info as object:{n:node,r:rectangle or null,h:content_hash or null} */
 	this.scanDOM = function () {
 		this.countVisibleLast = 0;
-		var nodeList = this.nodewalk(document, 0);
+		this.prunedCount = 0;
+		return this.scanTree(document, false, 0, null);
+	};
+	/** the number of elements in the subtrees pruned by the last scanning as invisible */
+	this.prunedCount = 0;
+	/** return true if the element and all its descendants can't be seen, so the subtree can be skipped;
+	 * the hidden visibility isn't enough, since it is inherited and a descendant may turn it back to visible
+	 * @param node target element
+	 * @param rect the bounding rectangle of the element
+	 * @param style the computed style of the element or null */
+	this.isHidden = function (node, rect, style) {
+		if (node === document.body || node === document.documentElement || style == null)
+			return false;
+		if (style.display === 'none')
+			return true;
+		return rect != null && (rect.width == 0 || rect.height == 0) && style.overflow !== 'visible';
+	};
+	/** return true if the own texts of the element aren't shown, its descendants still may be visible
+	 * @param style the computed style of the element or null */
+	this.isInvisible = function (style) {
+		return style != null && (style.visibility === 'hidden' || style.visibility === 'collapse');
+	};
+	/** scan the subtree in document order and return planar array of node info as scanDOM does;
+	 * the subtrees of invisible elements are not entered, their roots are marked with the pruned flag;
+	 * if the postponed array is given, the element subtrees starting lower than the limit are not entered and their roots are pushed to that array
+	 * @param root the root of the subtree
+	 * @param includeRoot true if the root itself must be scanned
+	 * @param limit the lowest position to scan if postponed is not null
+	 * @param postponed the array for postponed subtrees or null */
+	this.scanTree = function (root, includeRoot, limit, postponed) {
 		var result = [];
-		for (var i = 0; i < nodeList.length; i++) {
-			var nodeData = {
-				node: nodeList[i],
-				//Get position and size data
-				rect: (
-					nodeList[i].getBoundingClientRect ? nodeList[i].getBoundingClientRect() :
-						((function (nnn) {
-							try {
-								var range = document.createRange();
-								range.selectNodeContents(nnn);
-								return range.getBoundingClientRect();
-							}
-							catch (e) {
-								return null;
-							};
-						})(nodeList[i]))
-				),
-				hash: this.getNodeHash(nodeList[i]),
-				text: this.getNodeContent(nodeList[i])
-			};
-			if (nodeData.rect != null && (nodeData.rect.width == 0 || nodeData.rect.height == 0))
-				this.countVisibleLast++;
-			result.push(nodeData);
-		};
+		if ((includeRoot && !this.visit(root, limit, postponed, result)) || this.isSkipped(root))
+			return result;
+		var node = root.firstChild;
+		while (node != null) {
+			if (this.visit(node, limit, postponed, result) && node.firstChild != null && !this.isSkipped(node)) {
+				node = node.firstChild;
+				continue;
+			}
+			while (node !== root && node.nextSibling == null)
+				node = node.parentNode;
+			node = (node !== root) ? node.nextSibling : null;
+		}
 		return result;
 	};
+	/** scan one node for scanTree, return true if its children must be scanned as well */
+	this.visit = function (node, limit, postponed, result) {
+		var nodeData = this.scanNode(node);
+		if (postponed != null && node.nodeType === 1 && nodeData.rect != null && nodeData.rect.top > limit) {
+			postponed.push(node);
+			return false;
+		}
+		if (nodeData.rect != null && (nodeData.rect.width == 0 || nodeData.rect.height == 0))
+			this.countVisibleLast++;
+		result.push(nodeData);
+		if (node.nodeType !== 1) {
+			if (node.__lwrPruned)
+				node.__lwrPruned = false;
+			return true;
+		}
+		var style = window.getComputedStyle(node);
+		if (this.isHidden(node, nodeData.rect, style)) {
+			nodeData.pruned = true;
+			//The mutation observer ignores the style changes of the elements known as invisible
+			node.__lwrPruned = true;
+			this.prunedCount += 1 + node.getElementsByTagName('*').length;
+			return false;
+		}
+		if (this.isInvisible(style))
+			nodeData.invisible = true;
+		if (node.__lwrPruned)
+			node.__lwrPruned = false;
+		return true;
+	};
+	/** return the info about one node as scanDOM does for every node
+	 * @param node target node */
+	this.scanNode = function (node) {
+		return {
+			node: node,
+			//Get position and size data
+			rect: (
+				node.getBoundingClientRect ? node.getBoundingClientRect() :
+					((function (nnn) {
+						try {
+							var range = document.createRange();
+							range.selectNodeContents(nnn);
+							return range.getBoundingClientRect();
+						}
+						catch (e) {
+							return null;
+						};
+					})(node))
+			),
+			hash: this.getNodeHash(node),
+			text: this.getNodeContent(node)
+		};
+	};
+	/** subtrees postponed by scanViewport till the idle time */
+	this.pending = [];
+	this.pendingPos = 0;
+	/** nodes info scanned in the background and not yet taken by Java */
+	this.chunk = [];
+	/** all nodes info scanned since the last call of scanViewport */
+	this.collected = [];
+	/** the maximum number of nodes to scan at once when requestIdleCallback isn't available */
+	this.chunkSize = 2000;
+	/** scan only the nodes intersecting the viewport extended by the margin and return them packed as packDOM does,
+	 * the element subtrees below that area are scanned later in the idle time, Java is notified through window.luwrainGeomListener
+	 * @param margin the number of screens below the viewport to scan at once */
+	this.scanViewport = function (margin) {
+		clearTimeout(this.timerid);
+		this.cancelChunk();
+		var limit = window.innerHeight * (1 + margin);
+		this.pending = [];
+		this.pendingPos = 0;
+		this.chunk = [];
+		this.countVisibleLast = 0;
+		this.prunedCount = 0;
+		var first = this.scanTree(document, false, limit, this.pending);
+		this.collected = first.slice();
+		this.scheduleChunk();
+		return this.pack(first);
+	};
+	this.scheduleChunk = function () {
+		var that = this;
+		if (window.requestIdleCallback)
+			this.idleId = window.requestIdleCallback(function (deadline) { that.scanChunk(deadline); }); else
+			this.idleId = setTimeout(function () { that.scanChunk(null); }, 0);
+	};
+	this.cancelChunk = function () {
+		if (this.idleId === undefined)
+			return;
+		if (window.cancelIdleCallback)
+			window.cancelIdleCallback(this.idleId); else
+			clearTimeout(this.idleId);
+		this.idleId = undefined;
+	};
+	/** scan the next postponed subtrees while there is idle time */
+	this.scanChunk = function (deadline) {
+		this.idleId = undefined;
+		var count = 0;
+		while (this.pendingPos < this.pending.length) {
+			if (count > 0 && (deadline != null ? deadline.timeRemaining() < 1 : count >= this.chunkSize))
+				break;
+			var data = this.scanTree(this.pending[this.pendingPos++], true, 0, null);
+			for (var i = 0; i < data.length; i++) {
+				this.chunk.push(data[i]);
+				this.collected.push(data[i]);
+			}
+			count += data.length;
+		}
+		var completed = this.pendingPos >= this.pending.length;
+		if (completed) {
+			this.pending = [];
+			this.pendingPos = 0;
+			this.dom = this.domLast = this.collected;
+			this.countVisible = this.countVisibleLast;
+		} else
+			this.scheduleChunk();
+		if (window.luwrainGeomListener)
+			window.luwrainGeomListener.onChunk(completed);
+	};
+	/** return the nodes info scanned in the background since the previous call, packed as packDOM does */
+	this.takeChunk = function () {
+		var res = this.pack(this.chunk);
+		this.chunk = [];
+		return res;
+	};
+	/** next identifier to assign to a node */
+	this.nextId = 0;
+	/** return the stable identifier of the node, assigning it on the first call, Java finds the geometry of nodes by these identifiers
+	 * @param node target node */
+	this.getNodeId = function (node) {
+		var id = node.__lwrId;
+		if (id === undefined) {
+			id = this.nextId++;
+			node.__lwrId = id;
+		}
+		return id;
+	};
+	/** pack the dom structure for the transfer to Java with a minimal number of crossings:
+	 * ids - the identifiers of nodes joined with commas,
+	 * rects - left, top, width and height of every node joined with commas (-1 for nodes without rectangle),
+	 * texts - the content of every node joined with the zero character,
+	 * pruned - the identifiers of the roots of invisible subtrees joined with commas,
+	 * invisible - the identifiers of the elements with hidden visibility, whose own texts aren't shown, joined with commas */
+	this.packDOM = function () {
+		return this.pack(this.dom);
+	};
+	/** pack any planar array of node info in the format of packDOM
+	 * @param dom array of node info as returned by scanTree */
+	this.pack = function (dom) {
+		var rects = new Array(dom.length * 4);
+		var texts = new Array(dom.length);
+		var ids = new Array(dom.length);
+		var pruned = [], invisible = [];
+		for (var i = 0; i < dom.length; i++) {
+			var r = dom[i].rect;
+			var k = i * 4;
+			if (r != null) {
+				rects[k] = r.left;
+				rects[k + 1] = r.top;
+				rects[k + 2] = r.width;
+				rects[k + 3] = r.height;
+			} else {
+				rects[k] = rects[k + 1] = rects[k + 2] = rects[k + 3] = -1;
+			}
+			texts[i] = dom[i].text != null ? String(dom[i].text) : '';
+			ids[i] = this.getNodeId(dom[i].node);
+			if (dom[i].pruned)
+				pruned.push(ids[i]);
+			if (dom[i].invisible)
+				invisible.push(ids[i]);
+		}
+		return {
+			count: dom.length,
+			ids: ids.join(','),
+			rects: rects.join(','),
+			texts: texts.join('\u0000'),
+			prunedCount: pruned.length,
+			pruned: pruned.join(','),
+			invisibleCount: invisible.length,
+			invisible: invisible.join(',')
+		};
+	};
+	/** return the given roots without nested ones and, if connected is true, without roots detached from the document
+	 * @param roots array of nodes
+	 * @param connected true if only the nodes in the document must be taken */
+	this.topRoots = function (roots, connected) {
+		var res = [];
+		var set = new Set(roots);
+		for (var i = 0; i < roots.length; i++) {
+			var root = roots[i];
+			if (root == null || (connected && !document.contains(root)))
+				continue;
+			var nested = false;
+			for (var p = root.parentNode; p != null; p = p.parentNode)
+				if (set.has(p)) {
+					nested = true;
+					break;
+				}
+			if (nested)
+				continue;
+			res.push(root);
+		}
+		return res;
+	};
+	/** return planar array of the given nodes with all their descendants, nested roots and roots detached from the document are skipped
+	 * @param roots array of nodes
+	 * @param connected true if only the nodes in the document must be taken */
+	this.subtrees = function (roots, connected) {
+		var res = [];
+		var top = this.topRoots(roots, connected);
+		for (var i = 0; i < top.length; i++) {
+			res.push(top[i]);
+			var children = this.nodewalk(top[i]);
+			for (var k = 0; k < children.length; k++)
+				res.push(children[k]);
+		}
+		return res;
+	};
+	/** take the subtree roots collected by the mutation observer and return the geometry to patch the previous scanning result with:
+	 * removed - the identifiers of nodes gone from the document joined with commas,
+	 * changed - the packed geometry of modified subtrees, as packDOM does,
+	 * full - true if there are too many changes and the whole document must be scanned again */
+	this.scanMutations = function () {
+		var m = window.luwrainMutations;
+		if (!m)
+			return { full: true };
+		var removedRoots = m.removed, changedRoots = m.changed;
+		m.removed = [];
+		m.changed = [];
+		var removed = this.subtrees(removedRoots, false).filter(function (n) { return n.__lwrId !== undefined && !document.contains(n); });
+		var changedTop = this.topRoots(changedRoots, true);
+		var changed = [];
+		for (var i = 0; i < changedTop.length; i++) {
+			var data = this.scanTree(changedTop[i], true, 0, null);
+			for (var k = 0; k < data.length; k++)
+				changed.push(data[k]);
+			if (changed.length * 2 > this.dom.length)
+				return { full: true };
+		}
+		return {
+			full: false,
+			removedCount: removed.length,
+			removed: removed.map(function (n) { return n.__lwrId; }).join(','),
+			changed: this.pack(changed)
+		};
+	};
 	/** set nodes indexes list to observe modification text or position 
 	 * @param nodes array of nodes*/
 	this.setObserve = function (nodes) {
@@ -168,15 +431,27 @@ new function () {
 			/**/this.domLT = this.domLastLT;
 			/**/this.scanLT = (new Date().getTime()) - t;
 		}
-		// set next time for rescan
-		this.timerid = setTimeout(function (that) { that.onTimeout(); }, this.updateTimeout, this);
+		//No periodic rescanning, the modifications are tracked by the mutation observer and taken by scanMutations()
+		return modified;
+	};
+	/** rescan the document right now, it is called on refreshes instead of creating the object again, return true if modifications were detected
+	 * @param force take the new result even if no modifications were detected */
+	this.scan = function (force) {
+		clearTimeout(this.timerid);
+		this.cancelChunk();
+		var modified = this.onTimeout();
+		if (!modified && force) {
+			this.dom = this.domLast;
+			this.countVisible = this.countVisibleLast;
+			/**/this.domLT = this.domLastLT;
+		}
+		return modified;
 	};
 	/** do update */
 	this.doUpdate = function () {
 		clearTimeout(this.timerid);
 		this.timerid = setTimeout(function (that) { that.onTimeout(); }, 200, this);
 	}
-	// start auto scanning via setTimeout as fast as possible after class object created
-	this.onTimeout();
+	// auto scanning is started by the first call of scan() or scanViewport() from Java
 	//setTimeout(function(that){that.onTimeout();},1000,this);
 };
@@ -1,15 +1,133 @@
+/* The time to wait for the animation frame, which never comes on the pages not shown */
+var LUWRAIN_FLUSH_TIMEOUT = 100;
+
+/* return true if the attribute change of the element can't affect any text or geometry: the data attributes are never rendered,
+ * the style and the class matter only if the element is visible now or was visible at the last scanning;
+ * the element is invisible if it isn't displayed itself or it is inside the subtree pruned by the last scanning,
+ * the hidden visibility doesn't count, since the descendants may override it */
+function luwrainIsIgnoredAttribute(node, name) {
+    if (name != null && name.startsWith('data-'))
+        return true;
+    if (name !== 'style' && name !== 'class')
+        return false;
+    if (node.__lwrId !== undefined && node.__lwrPruned !== true)
+        return false;
+    if (!document.contains(node))
+        return true;
+    for (let p = node.parentNode; p != null; p = p.parentNode)
+        if (p.__lwrPruned === true)
+            return true;
+    const style = window.getComputedStyle(node);
+    return style != null && style.display === 'none';
+}
+
+/* return the identifier of the closest node with the known geometry, starting from the given one, or undefined */
+function luwrainDirtyId(node) {
+    for (let n = node; n != null; n = n.parentNode)
+        if (n.__lwrId !== undefined)
+            return n.__lwrId;
+    return undefined;
+}
+
+/* return true if the nodes of the childList record are all texts or comments, so only the texts of the elements change */
+function luwrainIsTextOnly(nodes) {
+    for (const node of nodes)
+        if (node.nodeType !== Node.TEXT_NODE && node.nodeType !== Node.COMMENT_NODE)
+            return false;
+    return true;
+}
+
+function luwrainFlushMutations() {
+    const p = window.luwrainPendingMutations;
+    if (!p.scheduled)
+        return;
+    p.scheduled = false;
+    let structural = p.structural;
+    for (const node of p.attributes)
+        if (!p.changed.has(node) && !luwrainIsIgnoredAttribute(node, node.__lwrAttribute)) {
+            p.changed.add(node);
+            structural = true;
+        }
+    const m = window.luwrainMutations;
+    const ids = new Set();
+    for (const node of p.changed) {
+        m.changed.push(node);
+        const id = luwrainDirtyId(node);
+        if (id !== undefined)
+            ids.add(id); else
+            structural = true;
+    }
+    for (const node of p.removed)
+        m.removed.push(node);
+    const count = p.count, dirty = p.changed.size + p.removed.length;
+    p.count = 0;
+    p.changed = new Set();
+    p.attributes = new Set();
+    p.removed = [];
+    p.structural = false;
+    if (dirty > 0)
+        webKitBlocks.onMutations(count, Array.from(ids).join(','), structural);
+}
+
+function luwrainScheduleFlush() {
+    const p = window.luwrainPendingMutations;
+    if (p.scheduled)
+        return;
+    p.scheduled = true;
+    if (window.requestAnimationFrame)
+        window.requestAnimationFrame(luwrainFlushMutations);
+    window.setTimeout(luwrainFlushMutations, LUWRAIN_FLUSH_TIMEOUT);
+}
+
 function mutationCallback(mutationsList, observer) {
-    webKitBlocks.setNeedsToBeUpdated(true);
+    const p = window.luwrainPendingMutations;
+    p.count += mutationsList.length;
+    for (const mutation of mutationsList) {
+        switch (mutation.type) {
+        case 'childList':
+            p.changed.add(mutation.target);
+            for (const node of mutation.removedNodes)
+                p.removed.push(node);
+            if (!luwrainIsTextOnly(mutation.addedNodes) || !luwrainIsTextOnly(mutation.removedNodes))
+                p.structural = true;
+            break;
+        case 'attributes':
+            if (mutation.attributeName != null && mutation.attributeName.startsWith('data-'))
+                break;
+            //The visibility is checked once per flush for every element, not for every record
+            mutation.target.__lwrAttribute = p.attributes.has(mutation.target) && mutation.target.__lwrAttribute !== mutation.attributeName ? null : mutation.attributeName;
+            p.attributes.add(mutation.target);
+            break;
+        case 'characterData':
+            p.changed.add(mutation.target.parentNode != null ? mutation.target.parentNode : mutation.target);
+            break;
+        }
+    }
+    luwrainScheduleFlush();
 }
 
-const observer = new MutationObserver(mutationCallback);
+/* The script may be evaluated several times for the same document, the state is created only once,
+ * so the records not flushed or not taken by the scanner yet are never lost */
+if (!window.luwrainObserver) {
+    /* The roots of modified subtrees, taken by the scanner to rescan only the changed parts of the document */
+    window.luwrainMutations = { changed: [], removed: [] };
 
-const target = document.body
+    /* The mutation records collected since the last flush, handed to Java once per animation frame or idle period
+     * as the deduplicated identifiers of the closest scanned ancestors of the changes; the structural flag means
+     * that not only the texts have changed, so the identifiers aren't enough to update the blocks */
+    window.luwrainPendingMutations = { count: 0, changed: new Set(), attributes: new Set(), removed: [], structural: false, scheduled: false };
 
-const config = {
-    subtree: true,
-    childList: true,
-    attributes: true
-};
+    const observer = new MutationObserver(mutationCallback);
 
-observer.observe(target, config);
\ No newline at end of file
+    const target = document.body
+
+    const config = {
+        subtree: true,
+        childList: true,
+        attributes: true,
+        characterData: true
+    };
+
+    observer.observe(target, config);
+    window.luwrainObserver = observer;
+}
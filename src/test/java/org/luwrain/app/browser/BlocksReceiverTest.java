@@ -0,0 +1,116 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+
+package org.luwrain.app.browser;
+
+import java.util.*;
+import java.lang.reflect.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.luwrain.core.events.*;
+import org.luwrain.controls.*;
+import org.luwrain.controls.block.*;
+
+public class BlocksReceiverTest
+{
+    private BlockArea area = null;
+    private BlocksReceiver receiver = null;
+
+    @Test public void previewToWholePage()
+    {
+	final var preview = blocks(5, 0);
+	receiver.onBatch(Arrays.copyOfRange(preview, 0, 3), true, false);
+	receiver.onBatch(Arrays.copyOfRange(preview, 3, 5), false, false);
+	assertEquals(5, area.getBlockCount());
+	for(int i = 0;i < 7;i++)
+	    move(InputEvent.Special.ARROW_DOWN);
+	move(InputEvent.Special.ARROW_RIGHT);
+	move(InputEvent.Special.ARROW_RIGHT);
+	assertEquals(10, area.getHotPointY());
+	assertEquals(3, area.getHotPointX());
+
+	//The whole page is shifted down by one row, the hot point must stay on the block 3, line 1
+	final var page = blocks(8, 1);
+	receiver.onBatch(Arrays.copyOfRange(page, 0, 2), true, false);
+	assertEquals(5, area.getBlockCount());
+	assertEquals(10, area.getHotPointY());
+	receiver.onBatch(Arrays.copyOfRange(page, 2, 6), false, false);
+	assertEquals(6, area.getBlockCount());
+	assertEquals(11, area.getHotPointY());
+	assertEquals(3, area.getHotPointX());
+	receiver.onBatch(Arrays.copyOfRange(page, 6, 8), false, true);
+	assertEquals(8, area.getBlockCount());
+	assertEquals(11, area.getHotPointY());
+	assertEquals(3, area.getHotPointX());
+    }
+
+    @Test public void failedWholePage()
+    {
+	receiver.onBatch(blocks(5, 0), true, false);
+	for(int i = 0;i < 3;i++)
+	    move(InputEvent.Special.ARROW_DOWN);
+	assertEquals(4, area.getHotPointY());
+	receiver.onBatch(Arrays.copyOfRange(blocks(5, 0), 0, 2), true, false);
+	receiver.onBatch(new Block[0], false, true);
+	assertEquals(2, area.getBlockCount());
+	assertEquals(4, area.getHotPointY());
+    }
+
+    @Test public void noPreview()
+    {
+	final var page = blocks(4, 0);
+	receiver.onBatch(Arrays.copyOfRange(page, 0, 1), true, false);
+	receiver.onBatch(Arrays.copyOfRange(page, 1, 4), false, true);
+	assertEquals(4, area.getBlockCount());
+	assertEquals(0, area.getHotPointY());
+    }
+
+    private void move(InputEvent.Special special)
+    {
+	assertTrue(area.onInputEvent(new InputEvent(special)));
+    }
+
+    /**
+     * Makes the blocks of two lines, one below another with the empty row
+     * between them.
+     */
+    static private WebBlock[] blocks(int count, int shift)
+    {
+	final var res = new WebBlock[count];
+	for(int i = 0;i < count;i++)
+	    res[i] = new WebBlock(1, shift + i * 3, 10, Arrays.asList(new WebLine("Блок " + i), new WebLine("Строка 2")));
+	return res;
+    }
+
+    @BeforeEach void createArea()
+    {
+	final var params = new BlockArea.Params();
+	params.context = (ControlContext)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ControlContext.class}, (proxy, method, args)->{
+		final var type = method.getReturnType();
+		if (type == boolean.class)
+		    return Boolean.FALSE;
+		if (type == int.class)
+		    return Integer.valueOf(0);
+		return null;
+	    });
+	params.appearance = new TextAppearanceTest.Appearance();
+	this.area = new BlockArea(params);
+	this.receiver = new BlocksReceiver(area);
+    }
+}
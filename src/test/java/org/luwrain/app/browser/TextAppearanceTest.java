@@ -44,14 +44,38 @@ public class TextAppearanceTest
 	assertEquals("               Строка 3  ", view.getLine(8));
     }
 
+    @Test public void lazy()
+    {
+	final var appearance = new Appearance();
+	final var blocks = getTestBlocks();
+	final var view = new View(appearance, Arrays.asList(blocks[0], blocks[1]));
+	assertEquals(6, view.getLineCount());
+	assertEquals(0, appearance.count);
+	assertEquals(" Строка 2  ", view.getLine(2));
+	assertEquals(1, appearance.count);
+	assertEquals(" Строка 2  ", view.getLine(2));
+	assertEquals("           ", view.getLine(3));
+	assertEquals(1, appearance.count);
+	view.append(Arrays.asList(blocks[2], blocks[3]));
+	assertEquals(1, appearance.count);
+	assertEquals(9, view.getLineCount());
+	final var full = new View(new Appearance(), Arrays.asList(blocks));
+	for(int i = 0;i < full.getLineCount();i++)
+	    assertEquals(full.getLine(i), view.getLine(i));
+	assertEquals(11, appearance.count);
+    }
+
     static final class Appearance implements BlockArea.Appearance
     {
+	int count = 0;
+
 	@Override public void announceFirstBlockLine(Block block, BlockLine blockLine) {}
 	@Override public void announceBlockLine(Block block, BlockLine blockLine) {}
 	@Override public String getBlockLineTextAppearance(Block block, BlockLine blockLine)
 	{
+	    count++;
 	    final var webLine = (WebLine)blockLine;
-	    return webLine.text;
+	    return webLine.getText();
 	}
 
     }
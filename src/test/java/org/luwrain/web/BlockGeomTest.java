@@ -24,6 +24,8 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import org.luwrain.web.BlockGeom.Block;
 
+import static org.luwrain.util.RangeUtils.*;
+
 public class BlockGeomTest
 {
     @Test public void main()
@@ -60,6 +62,178 @@ public class BlockGeomTest
 				assertEquals(5, b3.height);
     }
 
+    @Test public void random()
+    {
+	final var rand = new Random(2048);
+	for(int i = 0;i < 300;i++)
+	{
+	    final int count = 1 + rand.nextInt(200);
+	    final int maxLeft = 1 + rand.nextInt(50), maxTop = 1 + rand.nextInt(100);
+	    final var blocks = new ArrayList<Block>();
+	    for(int j = 0;j < count;j++)
+	    {
+		final int left = rand.nextInt(maxLeft);
+		//Some blocks without the width to check the quirks of the intersection
+		final int right = rand.nextInt(10) == 0?left - rand.nextInt(3):left + 1 + rand.nextInt(maxLeft);
+		blocks.add(new Block(left, right, rand.nextInt(maxTop), rand.nextInt(5)));
+	    }
+	    final var expected = copy(blocks);
+	    processByPairs(expected);
+	    final var g = new BlockGeom(copy(blocks));
+	    g.sort();
+	    //In the ranges of the random sizes, like the batches of the lines
+	    for(int pos = 0;pos < count;)
+	    {
+		final int end = Math.min(count, pos + 1 + rand.nextInt(20));
+		g.process(pos, end);
+		pos = end;
+	    }
+	    for(int j = 0;j < count;j++)
+	    {
+		final var e = expected.get(j);
+		final var b = g.blocks[j];
+		assertEquals(e.left, b.left);
+		assertEquals(e.right, b.right);
+		assertEquals(e.top, b.top);
+	    }
+	}
+    }
+
+    @Test public void update()
+    {
+	final var rand = new Random(4096);
+	for(int i = 0;i < 300;i++)
+	{
+	    final int count = 1 + rand.nextInt(200);
+	    final int maxLeft = 1 + rand.nextInt(50), maxTop = 1 + rand.nextInt(300);
+	    final var blocks = new ArrayList<Block>();
+	    for(int j = 0;j < count;j++)
+	    {
+		final int left = rand.nextInt(maxLeft);
+		final int right = rand.nextInt(10) == 0?left - rand.nextInt(3):left + 1 + rand.nextInt(maxLeft);
+		blocks.add(new Block(left, right, rand.nextInt(maxTop), 1 + rand.nextInt(5)));
+	    }
+	    final var g = new BlockGeom(copy(blocks));
+	    g.process();
+	    final int[] tops = new int[count];
+	    for(int j = 0;j < count;j++)
+		tops[j] = g.blocks[j].top;
+	    //Changing the heights of a few blocks, the same ones in the source blocks
+	    final var sorted = copy(blocks);
+	    Collections.sort(sorted);
+	    final var changed = new ArrayList<BlockGeom.Block>();
+	    for(int k = rand.nextInt(i % 10 == 0?count:3);k >= 0;k--)
+	    {
+		final int index = rand.nextInt(count);
+		final int height = rand.nextInt(8);
+		g.blocks[index].height = height;
+		sorted.get(index).height = height;
+		changed.add(g.blocks[index]);
+	    }
+	    final var moved = g.update(changed);
+	    processByPairs(sorted);
+	    final var expectedMoved = new ArrayList<BlockGeom.Block>();
+	    for(int j = 0;j < count;j++)
+	    {
+		assertEquals(sorted.get(j).top, g.blocks[j].top);
+		if (g.blocks[j].top != tops[j])
+		    expectedMoved.add(g.blocks[j]);
+	    }
+	    assertEquals(expectedMoved, moved);
+	}
+    }
+
+    @Test public void replace()
+    {
+	final var g = new BlockGeom(Arrays.asList(new Block(0, 10, 0, 2), new Block(0, 10, 3, 1), new Block(20, 30, 3, 1)));
+	g.process();
+	final var old = g.blocks[0];
+	final var by = new Block(0, 0, 0, 5);
+	g.replace(old, by);
+	assertSame(by, g.blocks[0]);
+	assertEquals(0, by.left);
+	assertEquals(10, by.right);
+	final var moved = g.update(Arrays.asList(by));
+	assertEquals(1, moved.size());
+	assertSame(g.blocks[1], moved.get(0));
+	assertEquals(7, g.blocks[1].top);
+	assertEquals(3, g.blocks[2].top);
+	assertThrows(IllegalArgumentException.class, ()->g.replace(old, new Block(0, 0, 0, 1)));
+	assertThrows(IllegalArgumentException.class, ()->g.replace(by, g.blocks[1]));
+    }
+
+    @Test public void sort()
+    {
+	final var rand = new Random(8192);
+	for(int i = 0;i < 100;i++)
+	{
+	    final int count = rand.nextInt(500);
+	    //The narrow ranges for the duplicates, the wide ones for the higher bytes
+	    final int range = i % 2 == 0?10:Integer.MAX_VALUE;
+	    final var blocks = new ArrayList<Block>();
+	    for(int j = 0;j < count;j++)
+		blocks.add(new Block(rand.nextInt(range) - range / 2, 0, rand.nextInt(range) - range / 2, 0));
+	    final var expected = new ArrayList<BlockGeom.Block>(blocks);
+	    Collections.sort(expected);
+	    final var g = new BlockGeom(blocks);
+	    g.sort();
+	    for(int j = 0;j < count;j++)
+		assertSame(expected.get(j), g.blocks[j]);
+	}
+    }
+
+    @Test public void rescale()
+    {
+	final var g = new BlockGeom(asList(new Block(10, 30, 100, 1), new Block(40, 41, 0, 1)));
+	g.rescale(0.5f, 5);
+	g.sort();
+	assertEquals(20, g.blocks[0].left);
+	assertEquals(25, g.blocks[0].right);
+	assertEquals(0, g.blocks[0].top);
+	assertEquals(5, g.blocks[1].left);
+	assertEquals(15, g.blocks[1].right);
+	assertEquals(50, g.blocks[1].top);
+    }
+
+    @Test public void nonConsecutiveRanges()
+    {
+	final var g = new BlockGeom(asList(new Block(1, 4, 3, 5), new Block(3, 5, 1, 5)));
+	g.sort();
+	assertThrows(IllegalStateException.class, ()->g.process(1, 2));
+    }
+
+    static List<Block> copy(List<Block> blocks)
+    {
+	final var res = new ArrayList<Block>();
+	for(var b: blocks)
+	    res.add(new Block(b.left, b.right, b.top, b.height));
+	return res;
+    }
+
+    /**
+     * Places the blocks checking every pair of them, as it was done before
+     * the index of the extents.
+     */
+    static void processByPairs(List<Block> blocks)
+    {
+	Collections.sort(blocks);
+	final int[] srcTops = new int[blocks.size()];
+	for(int i = 0;i < blocks.size();i++)
+	    srcTops[i] = blocks.get(i).top;
+	for(int j = 0;j < blocks.size();j++)
+	{
+	    final var b2 = blocks.get(j);
+	    for(int i = 0;i < j;i++)
+	    {
+		final var b1 = blocks.get(i);
+		if (!intersects(b1.left, b1.right - b1.left, b2.left, b2.right - b1.left))
+		    continue;
+		final int space = srcTops[i] == srcTops[j]?1:srcTops[j] - srcTops[i];
+		b2.top = Math.max(b2.top, b1.top + b1.height + space - 1);
+	    }
+	}
+    }
+
     static final class Block extends BlockGeom.Block
     {
 	Block(int left, int right, int top, int height)
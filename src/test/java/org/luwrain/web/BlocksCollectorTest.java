@@ -0,0 +1,203 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlocksCollectorTest
+{
+    @Test public void simple()
+    {
+	final var root = block("body",
+			       block("p", text("One "), markup("a", text("two")), text(" three")),
+			       block("div",
+				     block("p", text("Four")),
+				     markup("span", block("p", text("five"))),
+				     text("six")),
+			       block("p"),
+			       text("seven"));
+	final var blocks = compare(root);
+	assertEquals(5, blocks.size());
+	assertEquals("p:One two three", blocks.get(0));
+	assertEquals("p:Four", blocks.get(1));
+	assertEquals("p:five[span]", blocks.get(2));
+	assertEquals("div:six", blocks.get(3));
+	assertEquals("body:seven", blocks.get(4));
+    }
+
+    @Test public void pruned()
+    {
+	final var hidden = block("div", block("p", text("hidden")));
+	hidden.pruned = true;
+	final var root = block("body", block("p", text("visible")), hidden);
+	final var blocks = compare(root);
+	assertEquals(1, blocks.size());
+	assertEquals("p:visible", blocks.get(0));
+    }
+
+    @Test public void forked()
+    {
+	final var hidden = block("div", block("p", text("hidden")));
+	hidden.pruned = true;
+	final var root = block("body", block("p", text("visible")), block("fork", block("p", text("elsewhere"))), hidden);
+	final var iterative = new Collector();
+	iterative.process(root);
+	final var recursive = new Collector();
+	recursive.processRecursively(root);
+	for(var c: List.of(iterative, recursive))
+	{
+	    assertEquals(List.of("p:visible"), c.res);
+	    assertEquals(1, c.getPrunedCount());
+	    assertEquals(1, c.getForkedCount());
+	}
+    }
+
+    @Test public void random()
+    {
+	final var rand = new Random(1024);
+	for(int i = 0;i < 50;i++)
+	    compare(randomTree(rand, 6));
+    }
+
+    @Test public void deep()
+    {
+	final var root = block("body");
+	var n = root;
+	for(int i = 0;i < 100000;i++)
+	{
+	    final var c = (i % 2 == 0)?markup("span"):block("div");
+	    n.add(c);
+	    n = c;
+	}
+	n.add(text("deep"));
+	final var c = new Collector();
+	c.process(root);
+	assertEquals(1, c.res.size());
+	assertEquals("div:deep[span]", c.res.get(0));
+    }
+
+    @Test public void cancelled()
+    {
+	final var root = block("body", block("p", text("one")), block("p", text("two")), block("p", text("three")));
+	final var c = new Collector(){
+		int created = 0;
+		@Override public Block createBlock(TestNode node)
+		{
+		    if (++created == 3)
+			throw new java.util.concurrent.CancellationException();
+		    return super.createBlock(node);
+		}
+	    };
+	assertThrows(java.util.concurrent.CancellationException.class, ()->c.process(root));
+	assertEquals(1, c.res.size());
+    }
+
+    private List<String> compare(TestNode root)
+    {
+	final var iterative = new Collector();
+	iterative.process(root);
+	final var recursive = new Collector();
+	recursive.processRecursively(root);
+	assertEquals(recursive.res, iterative.res);
+	assertEquals(recursive.blocks.size(), iterative.blocks.size());
+	assertEquals(recursive.getPrunedCount(), iterative.getPrunedCount());
+	return iterative.res;
+    }
+
+    private TestNode randomTree(Random rand, int depth)
+    {
+	final int kind = rand.nextInt(3);
+	if (depth == 0 || kind == 0)
+	    return text("t" + rand.nextInt(100));
+	final var res = kind == 1?markup("span"):block("div");
+	res.pruned = rand.nextInt(10) == 0;
+	final int count = rand.nextInt(5);
+	for(int i = 0;i < count;i++)
+	    res.add(randomTree(rand, depth - 1));
+	return res;
+    }
+
+    static TestNode block(String name, TestNode ... children) { return new TestNode(name, false, null, children); }
+    static TestNode markup(String name, TestNode ... children) { return new TestNode(name, true, null, children); }
+    static TestNode text(String text) { return new TestNode("#text", false, text); }
+
+    static final class TestNode
+    {
+	final String name, text;
+	final boolean markup;
+	final List<TestNode> children = new ArrayList<>();
+	TestNode next = null;
+	boolean pruned = false;
+	TestNode(String name, boolean markup, String text, TestNode ... children)
+	{
+	    this.name = name;
+	    this.markup = markup;
+	    this.text = text;
+	    for(var c: children)
+		add(c);
+	}
+	void add(TestNode child)
+	{
+	    if (!children.isEmpty())
+		children.get(children.size() - 1).next = child;
+	    children.add(child);
+	}
+    }
+
+    static final class Block
+    {
+	final String name, markup;
+	final StringBuilder text = new StringBuilder();
+	Block(String name, String markup)
+	{
+	    this.name = name;
+	    this.markup = markup;
+	}
+	@Override public String toString()
+	{
+	    return name + ":" + text + (markup != null?"[" + markup + "]":"");
+	}
+    }
+
+    /**
+     * Marks every block with the name of the innermost markup node at the
+     * moment of its creation.
+     */
+    static class Collector extends BlocksCollector<TestNode, Block>
+    {
+	final List<String> res = new ArrayList<>();
+	@Override public List<TestNode> getChildNodes(TestNode node) { return node.children; }
+	@Override public TestNode getFirstChild(TestNode node) { return node.children.isEmpty()?null:node.children.get(0); }
+	@Override public TestNode getNextSibling(TestNode node) { return node.next; }
+	@Override public boolean isMarkupNode(TestNode node) { return node.markup; }
+	@Override public boolean isTextNode(TestNode node) { return node.text != null; }
+	@Override public boolean isPrunedNode(TestNode node) { return node.pruned; }
+	@Override public boolean isForkedNode(TestNode node) { return node.name.equals("fork"); }
+	@Override public void addTextToBlock(TestNode node, Block block) { block.text.append(node.text); }
+	@Override public Block createBlock(TestNode node) { return new Block(node.name, markupStack.isEmpty()?null:markupStack.getLast().name); }
+	@Override public boolean saveBlock(Block block)
+	{
+	    if (block.text.length() == 0)
+		return false;
+	    res.add(block.toString());
+	    return true;
+	}
+    }
+}
@@ -0,0 +1,97 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+
+import static org.luwrain.web.WebKitBlockBase.*;
+
+/**
+ * Compares the sequential and the parallel building of the lines for the
+ * different numbers of the blocks, to choose {@code
+ * WebKitBlockBase.PARALLEL_THRESHOLD}. It isn't a test, it is launched
+ * manually with the test classpath:
+ * {@code java -cp target/classes:target/test-classes org.luwrain.web.BuildLinesBenchmark}
+ */
+public final class BuildLinesBenchmark
+{
+    static final int
+	WARMUP_ROUNDS = 20,
+	ROUNDS = 30;
+
+    static final String[] WORDS = {"the", "page", "text", "of", "a", "paragraph", "with", "some", "words", "and", "links", "к", "тексту", "страницы"};
+
+    public static void main(String[] args)
+    {
+	System.out.println("Parallelism: " + java.util.concurrent.ForkJoinPool.commonPool().getParallelism());
+	System.out.println("Blocks\tSequential, us\tParallel, us\tSpeedup");
+	for(int count = 16;count <= 8192;count *= 2)
+	{
+	    final long seq = measure(count, false), par = measure(count, true);
+	    System.out.println("" + count + "\t" + (seq / 1000) + "\t" + (par / 1000) + "\t" + String.format("%.2f", (double)seq / par));
+	}
+    }
+
+    /**
+     * Returns the median time of building the lines in nanoseconds.
+     */
+    static long measure(int count, boolean parallel)
+    {
+	final var rand = new Random(count);
+	final long[] times = new long[ROUNDS];
+	for(int i = 0;i < WARMUP_ROUNDS + ROUNDS;i++)
+	{
+	    final var blocks = makeBlocks(rand, count);
+	    final long start = System.nanoTime();
+	    if (parallel)
+		blocks.parallelStream().forEach(WebKitBlockBase::buildLines); else
+		blocks.forEach(WebKitBlockBase::buildLines);
+	    final long time = System.nanoTime() - start;
+	    if (i >= WARMUP_ROUNDS)
+		times[i - WARMUP_ROUNDS] = time;
+	}
+	Arrays.sort(times);
+	return times[ROUNDS / 2];
+    }
+
+    /**
+     * Makes the blocks similar to the ones of the usual pages: mostly short
+     * texts of menus and headings and some paragraphs of several hundreds
+     * of characters.
+     */
+    static List<WebKitBlockBase> makeBlocks(Random rand, int count)
+    {
+	final var res = new ArrayList<WebKitBlockBase>(count);
+	for(int i = 0;i < count;i++)
+	{
+	    final var b = new WebKitBlockBase();
+	    final int runCount = 1 + rand.nextInt(4);
+	    for(int j = 0;j < runCount;j++)
+	    {
+		final int wordCount = rand.nextInt(10) == 0?50 + rand.nextInt(150):1 + rand.nextInt(12);
+		final var text = new StringBuilder();
+		for(int k = 0;k < wordCount;k++)
+		    text.append(WORDS[rand.nextInt(WORDS.length)]).append(' ');
+		b.runs.add(new Run(text.toString()));
+	    }
+	    b.left = rand.nextInt(20);
+	    b.right = b.left + 20 + rand.nextInt(80);
+	    res.add(b);
+	}
+	return res;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+
+/**
+ * Compares the Unicode line breaker with the whitespace one on the texts
+ * of the different scripts, kept in the text arena like the texts of the
+ * real pages. The Unicode breaker must stay within {@code MAX_FACTOR} of
+ * the whitespace one, otherwise the benchmark exits with the non-zero
+ * status. It isn't a test, it is launched manually with the test classpath:
+ * {@code java -cp target/classes:target/test-classes org.luwrain.web.LineBreakerBenchmark}
+ */
+public final class LineBreakerBenchmark
+{
+    static final int
+	WARMUP_ROUNDS = 20,
+	ROUNDS = 30,
+	TEXT_COUNT = 4096,
+	MAX_FACTOR = 20;
+
+    static final String[]
+	LATIN = {"the", "page", "text", "of", "a", "paragraph", "with", "well-known", "words", "and", "links"},
+	CYRILLIC = {"к", "тексту", "страницы", "со", "ссылками", "и", "общеизвестными", "словами"},
+	URLS = {"https://luwrain.org/download/", "mailto:info@luwrain.org", "/org/luwrain/browser/settings"},
+	CJK = {"日本語の", "テキストは", "空白なしで", "書かれます", "中文文本", "没有空格"};
+
+    public static void main(String[] args)
+    {
+	final var unicode = LineBreaker.forLocale(Locale.getDefault());
+	final var scripts = new LinkedHashMap<String, String[]>();
+	scripts.put("Latin", LATIN);
+	scripts.put("Cyrillic", CYRILLIC);
+	scripts.put("URLs", URLS);
+	scripts.put("CJK", CJK);
+	System.out.println("Texts\tWhitespace, us\tUnicode, us\tFactor");
+	boolean ok = true;
+	for(var e: scripts.entrySet())
+	{
+	    final var words = e.getValue();
+	    final var texts = makeTexts(new Random(words.length), words);
+	    final long ws = measure(texts, LineBreaker.WHITESPACE), uc = measure(texts, unicode);
+	    final double factor = (double)uc / ws;
+	    System.out.println(e.getKey() + "\t" + (ws / 1000) + "\t" + (uc / 1000) + "\t" + String.format("%.2f", factor));
+	    if (factor > MAX_FACTOR)
+		ok = false;
+	}
+	if (!ok)
+	{
+	    System.out.println("The Unicode breaker is slower than the whitespace one more than " + MAX_FACTOR + " times");
+	    System.exit(1);
+	}
+    }
+
+    /**
+     * Returns the median time of finding the breaks of all texts in nanoseconds.
+     */
+    static long measure(List<CharSequence> texts, LineBreaker breaker)
+    {
+	final long[] times = new long[ROUNDS];
+	long sum = 0;
+	for(int i = 0;i < WARMUP_ROUNDS + ROUNDS;i++)
+	{
+	    final long start = System.nanoTime();
+	    for(var t: texts)
+		sum += breaker.getBreaks(t).length;
+	    final long time = System.nanoTime() - start;
+	    if (i >= WARMUP_ROUNDS)
+		times[i - WARMUP_ROUNDS] = time;
+	}
+	//Using the sum, so the calls can't be thrown away
+	if (sum < 0)
+	    System.out.println(sum);
+	Arrays.sort(times);
+	return times[ROUNDS / 2];
+    }
+
+    static List<CharSequence> makeTexts(Random rand, String[] words)
+    {
+	final var arena = new TextArena();
+	final var res = new ArrayList<CharSequence>(TEXT_COUNT);
+	for(int i = 0;i < TEXT_COUNT;i++)
+	{
+	    final int wordCount = rand.nextInt(10) == 0?50 + rand.nextInt(150):1 + rand.nextInt(12);
+	    final var text = new StringBuilder();
+	    for(int j = 0;j < wordCount;j++)
+	    {
+		text.append(words[rand.nextInt(words.length)]);
+		if (words != CJK)
+		    text.append(' ');
+	    }
+	    res.add(arena.add(new String(text)));
+	}
+	return res;
+    }
+}
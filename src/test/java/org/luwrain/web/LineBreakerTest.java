@@ -0,0 +1,121 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import static org.luwrain.web.WebKitBlockBase.*;
+
+public class LineBreakerTest
+{
+    @Test public void whitespace()
+    {
+	assertArrayEquals(new int[]{4, 9}, LineBreaker.WHITESPACE.getBreaks("one two  three"));
+	assertArrayEquals(new int[0], LineBreaker.WHITESPACE.getBreaks("  "));
+	assertArrayEquals(new int[0], LineBreaker.WHITESPACE.getBreaks("https://luwrain.org/download/"));
+    }
+
+    @Test public void unicodeWords()
+    {
+	final var b = LineBreaker.forLocale(Locale.ENGLISH);
+	final var text = "Какие вкусные пирожки были сегодня к обеду";
+	assertArrayEquals(LineBreaker.WHITESPACE.getBreaks(text), b.getBreaks(text));
+	assertArrayEquals(new int[]{5}, b.getBreaks("well-known"));
+	assertArrayEquals(new int[0], b.getBreaks(""));
+	assertArrayEquals(new int[0], b.getBreaks("a"));
+    }
+
+    @Test public void unicodeCjk()
+    {
+	final var text = "日本語のテキストは空白なしで書かれます";
+	assertEquals(0, LineBreaker.WHITESPACE.getBreaks(text).length);
+	final int[] breaks = LineBreaker.forLocale(Locale.JAPANESE).getBreaks(text);
+	assertTrue(breaks.length > 5);
+	for(int i = 0;i < breaks.length;i++)
+	{
+	    assertTrue(breaks[i] > 0 && breaks[i] < text.length());
+	    assertTrue(i == 0 || breaks[i] > breaks[i - 1]);
+	}
+    }
+
+    @Test public void arena()
+    {
+	final var arena = new TextArena();
+	arena.add("The first text");
+	final CharSequence text = arena.add("The second, well-known text");
+	final var b = LineBreaker.forLocale(Locale.ENGLISH);
+	assertArrayEquals(b.getBreaks(text.toString()), b.getBreaks(text));
+	assertArrayEquals(new int[]{4, 12, 17, 23}, b.getBreaks(text));
+    }
+
+    @Test public void lines()
+    {
+	final var b = new WebKitBlockBase();
+	b.runs.add(new Run("日本語のテキストは空白なしで書かれます", LineBreaker.forLocale(Locale.JAPANESE)));
+	b.left = 0;
+	b.right = 6;
+	b.buildLines();
+	final var text = new StringBuilder();
+	for(var l: b.lines)
+	{
+	    assertTrue(l.getText().length() <= b.right - b.left);
+	    text.append(l.getText());
+	}
+	assertEquals(b.getText(), new String(text));
+    }
+
+    @Test public void threads() throws Exception
+    {
+	final var b = LineBreaker.forLocale(Locale.ENGLISH);
+	final var texts = new ArrayList<String>();
+	final var rand = new Random(17);
+	for(int i = 0;i < 200;i++)
+	{
+	    final var t = new StringBuilder();
+	    for(int j = rand.nextInt(30);j > 0;j--)
+		t.append("word-").append(rand.nextInt(1000)).append(' ');
+	    texts.add(new String(t));
+	}
+	final var expected = new ArrayList<int[]>();
+	for(var t: texts)
+	    expected.add(b.getBreaks(t));
+	final var pool = Executors.newFixedThreadPool(4);
+	try {
+	    final var futures = new ArrayList<Future<List<int[]>>>();
+	    for(int i = 0;i < 4;i++)
+		futures.add(pool.submit(()->{
+			    final var res = new ArrayList<int[]>();
+			    for(var t: texts)
+				res.add(b.getBreaks(t));
+			    return res;
+			}));
+	    for(var f: futures)
+	    {
+		final var res = f.get();
+		for(int i = 0;i < texts.size();i++)
+		    assertArrayEquals(expected.get(i), res.get(i));
+	    }
+	}
+	finally {
+	    pool.shutdown();
+	}
+    }
+}
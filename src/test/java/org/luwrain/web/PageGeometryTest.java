@@ -0,0 +1,155 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+
+package org.luwrain.web;
+
+import java.util.*;
+import javax.xml.parsers.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageGeometryTest
+{
+    @Test public void lookup() throws Exception
+    {
+	final var g = newGeometry();
+	g.add(new int[]{5, 100000, 7}, new int[]{1, 2, 3, 4, 10, 20, 30, 40, -1, -1, -1, -1}, "one\0two\0", new int[]{100000}, new int[]{5});
+	assertEquals(3, g.size());
+	assertEquals(10, g.getX(100000));
+	assertEquals(40, g.getHeight(100000));
+	assertEquals("two", g.getText(100000));
+	assertEquals("", g.getText(7));
+	assertTrue(g.isPruned(100000));
+	assertFalse(g.isPruned(5));
+	assertTrue(g.isInvisible(5));
+	assertFalse(g.isInvisible(7));
+	assertFalse(g.contains(6));
+	assertNull(g.getEntry(6));
+	final int slot = g.getSlot(100000);
+	assertTrue(slot >= 0);
+	assertEquals(10, g.getXAt(slot));
+	assertEquals(20, g.getYAt(slot));
+	assertEquals(30, g.getWidthAt(slot));
+	assertEquals(40, g.getHeightAt(slot));
+	assertTrue(g.isPrunedAt(slot));
+	assertTrue(g.isInvisibleAt(g.getSlot(5)));
+	assertEquals(-1, g.getSlot(6));
+	assertTrue(g.remove(100000));
+	assertFalse(g.remove(100000));
+	assertFalse(g.contains(100000));
+	assertFalse(g.isPruned(100000));
+	assertEquals("one", g.getText(5));
+	//The single empty text has no separators at all
+	g.add(new int[]{9}, new int[4], "", new int[0], new int[0]);
+	assertEquals("", g.getText(9));
+    }
+
+    /**
+     * The identifiers grow on every replacement of the content, the arrays
+     * mustn't.
+     */
+    @Test public void churn() throws Exception
+    {
+	final var g = newGeometry();
+	int next = 0;
+	for(int round = 0;round < 1000;round++)
+	{
+	    final int[] ids = new int[100];
+	    for(int i = 0;i < ids.length;i++)
+		ids[i] = next++;
+	    g.add(ids, new int[ids.length * 4], emptyTexts(ids.length), new int[0], new int[0]);
+	    for(int id = next - 200;id < next - 100;id++)
+		g.remove(id);
+	    g.trim();
+	}
+	assertEquals(100, g.size());
+	assertTrue(g.getCapacity() <= 1024, "capacity " + g.getCapacity());
+	for(int id = next - 100;id < next;id++)
+	    assertTrue(g.contains(id));
+    }
+
+    @Test public void trim() throws Exception
+    {
+	final var g = newGeometry();
+	final int count = 5000;
+	final int[] ids = new int[count], rects = new int[count * 4];
+	final var texts = new StringBuilder();
+	for(int i = 0;i < count;i++)
+	{
+	    ids[i] = i * 3;
+	    rects[i * 4] = i;
+	    texts.append("t").append(i).append('\0');
+	}
+	g.add(ids, rects, texts.toString(), new int[]{ids[4999]}, new int[]{ids[4949]});
+	assertTrue(g.getCapacity() >= count);
+	for(int i = 0;i < count;i++)
+	    if (i % 50 != 49)
+		g.remove(ids[i]);
+	g.trim();
+	assertEquals(100, g.size());
+	assertEquals(1024, g.getCapacity());
+	for(int i = 49;i < count;i += 50)
+	{
+	    assertEquals(i, g.getX(ids[i]));
+	    assertEquals("t" + i, g.getText(ids[i]));
+	}
+	assertTrue(g.isPruned(ids[4999]));
+	assertFalse(g.isPruned(ids[4949]));
+	assertTrue(g.isInvisible(ids[4949]));
+	assertFalse(g.isInvisible(ids[4999]));
+    }
+
+    @Test public void random() throws Exception
+    {
+	final var g = newGeometry();
+	final var expected = new HashMap<Integer, Integer>();
+	final var rand = new Random(1024);
+	for(int round = 0;round < 200;round++)
+	{
+	    final int count = rand.nextInt(300);
+	    final int[] ids = new int[count], rects = new int[count * 4];
+	    for(int i = 0;i < count;i++)
+	    {
+		ids[i] = rand.nextInt(20000);
+		rects[i * 4 + 1] = rand.nextInt(1000);
+		expected.put(Integer.valueOf(ids[i]), Integer.valueOf(rects[i * 4 + 1]));
+	    }
+	    g.add(ids, rects, emptyTexts(count), new int[0], new int[0]);
+	    for(int i = rand.nextInt(300);i > 0;i--)
+	    {
+		final int id = rand.nextInt(20000);
+		assertEquals(expected.remove(Integer.valueOf(id)) != null, g.remove(id));
+	    }
+	    g.trim();
+	    assertEquals(expected.size(), g.size());
+	}
+	for(var e: expected.entrySet())
+	    assertEquals(e.getValue().intValue(), g.getY(e.getKey().intValue()));
+    }
+
+    //The texts are joined with the zero character, as the injection does
+    static private String emptyTexts(int count)
+    {
+	return count > 0?"\0".repeat(count - 1):"";
+    }
+
+    static private PageGeometry newGeometry() throws Exception
+    {
+	return new PageGeometry(DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument());
+    }
+}
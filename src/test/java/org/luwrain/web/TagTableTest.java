@@ -0,0 +1,50 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+
+package org.luwrain.web;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import static org.luwrain.web.TagTable.Kind.*;
+
+public class TagTableTest
+{
+    @Test public void defaultClasses()
+    {
+	final var t = TagTable.getDefault();
+	for(var tag: new String[]{"A", "B", "EM", "IMG", "SPAN", "STRONG"})
+	    assertEquals(INLINE, t.get(tag), tag);
+	for(var tag: new String[]{"BODY", "BR", "BUTTON", "DIV", "H1", "H2", "H3", "HR", "INPUT", "LI", "LINK", "NOSCRIPT", "P", "SCRIPT", "STYLE", "TEXTAREA", "UL"})
+	    assertEquals(BLOCK, t.get(tag), tag);
+	for(var tag: new String[]{"I", "U", "CODE", "SUB", "SUP", "LABEL", "ABBR", "Q", "TIME", "TEMPLATE", "HEAD", "TITLE"})
+	    assertNull(t.get(tag), tag);
+	assertEquals(INLINE, t.get("span"));
+    }
+
+    @Test public void overrides()
+    {
+	final var t = TagTable.create("i=INLINE, SCRIPT = skip;");
+	assertEquals(INLINE, t.get("I"));
+	assertEquals(SKIP, t.get("SCRIPT"));
+	assertEquals(INLINE, t.get("A"));
+	assertNull(TagTable.getDefault().get("I"));
+	assertSame(TagTable.getDefault(), TagTable.create(" "));
+	assertThrows(IllegalArgumentException.class, ()->TagTable.create("I"));
+	assertThrows(IllegalArgumentException.class, ()->TagTable.create("I=WORD"));
+    }
+}
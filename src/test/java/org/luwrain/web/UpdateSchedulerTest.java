@@ -0,0 +1,92 @@
+/*
+   Copyright 2012-2024 Michael Pozhidaev <msp@luwrain.org>
+
+   This file is part of LUWRAIN.
+
+   LUWRAIN is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public
+   License as published by the Free Software Foundation; either
+   version 3 of the License, or (at your option) any later version.
+
+   LUWRAIN is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+*/
+
+package org.luwrain.web;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpdateSchedulerTest
+{
+    @Test public void coalescing() throws Exception
+    {
+	final var counts = new LinkedBlockingQueue<Integer>();
+	final var s = new UpdateScheduler(100, 10000, count->counts.add(Integer.valueOf(count)));
+	try {
+	    for(int i = 0;i < 100;i++)
+		s.onMutations(2);
+	    assertEquals(Integer.valueOf(200), counts.poll(5, TimeUnit.SECONDS));
+	    assertNull(counts.poll(300, TimeUnit.MILLISECONDS));
+	    assertEquals(1, s.getUpdateCount());
+	    assertEquals(200, s.getCoalescedCount());
+	}
+	finally {
+	    s.close();
+	}
+    }
+
+    @Test public void maxStaleness() throws Exception
+    {
+	final var counts = new LinkedBlockingQueue<Integer>();
+	final var s = new UpdateScheduler(200, 400, count->counts.add(Integer.valueOf(count)));
+	try {
+	    //The page never stays quiet for the quiet period, but gets updated anyway
+	    final long end = System.currentTimeMillis() + 1500;
+	    while(System.currentTimeMillis() < end)
+	    {
+		s.onMutations(1);
+		Thread.sleep(20);
+	    }
+	    assertTrue(s.getUpdateCount() >= 2, "" + s.getUpdateCount() + " updates");
+	}
+	finally {
+	    s.close();
+	}
+    }
+
+    @Test public void mutationsDuringUpdate() throws Exception
+    {
+	final var counts = new LinkedBlockingQueue<Integer>();
+	final var started = new CountDownLatch(1);
+	final var proceed = new CountDownLatch(1);
+	final var s = new UpdateScheduler(50, 1000, count->{
+		started.countDown();
+		proceed.await();
+		counts.add(Integer.valueOf(count));
+	    });
+	try {
+	    s.onMutations(1);
+	    assertTrue(started.await(5, TimeUnit.SECONDS));
+	    s.onMutations(3);
+	    s.onMutations(4);
+	    proceed.countDown();
+	    assertEquals(Integer.valueOf(1), counts.poll(5, TimeUnit.SECONDS));
+	    assertEquals(Integer.valueOf(7), counts.poll(5, TimeUnit.SECONDS));
+	}
+	finally {
+	    s.close();
+	}
+    }
+
+    @Test public void illegalPeriods()
+    {
+	assertThrows(IllegalArgumentException.class, ()->new UpdateScheduler(0, 100, count->{}));
+	assertThrows(IllegalArgumentException.class, ()->new UpdateScheduler(100, 50, count->{}));
+    }
+}
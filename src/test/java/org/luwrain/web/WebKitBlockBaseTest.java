@@ -36,12 +36,12 @@ public class WebKitBlockBaseTest
 	b.buildLines();
 	assertEquals(7, b.lines.size());
 	for(final var l: b.lines)
-	    assertTrue(l.text.length() <= b.right - b.left);
-	assertEquals("Какие вкусные ", b.lines.get(0).text);
-	assertEquals("пирожки были ", b.lines.get(1).text);
-	assertEquals("сегодня к ", b.lines.get(2).text);
-	assertEquals("обеду, но ", b.lines.get(3).text);
-	assertEquals("особенно ", b.lines.get(4).text);
-	assertEquals("будет завтра.", b.lines.get(6).text);
+	    assertTrue(l.getText().length() <= b.right - b.left);
+	assertEquals("Какие вкусные ", b.lines.get(0).getText());
+	assertEquals("пирожки были ", b.lines.get(1).getText());
+	assertEquals("сегодня к ", b.lines.get(2).getText());
+	assertEquals("обеду, но ", b.lines.get(3).getText());
+	assertEquals("особенно ", b.lines.get(4).getText());
+	assertEquals("будет завтра.", b.lines.get(6).getText());
     }
 }